@@ -1,75 +1,130 @@
 package com.qylla.util.pathfinding;
 
 import java.util.ArrayList;
-import java.util.Collections;
 
-import com.qylla.games.androidwars.entities.TMXTileMapObject;
+import com.qylla.util.pathfinding.heuristics.ManhattanHeuristic;
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
 import com.qylla.util.pathfinding.interfaces.Mover;
 import com.qylla.util.pathfinding.interfaces.PathFinder;
+import com.qylla.util.pathfinding.interfaces.TerrainMap;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
 
 /**
  * A path finder implementation that uses the AStar heuristic based algorithm
  * to determine a path. 
  * 
+ * This is the original engine, kept for the code written against it. It
+ * charges every mover the terrain cost of the map and asks the map about
+ * blocking tile by tile, so movement types with their own costs get paths
+ * priced for the terrain. {@link GridPathFinder} reads the costs and
+ * blocking of each movement type instead.
+ * 
  * @author Cesar Ramirez
  */
 public class AStarPathFinder implements  PathFinder {
-	/** The set of nodes that have been searched through */
-	protected ArrayList<Node> closed = new ArrayList<Node>();
+	/** The neighbour order used when the destination is mostly to the west */
+	private static final int[] ORDER_WEST = {3, 2, 4, 1};
+	/** The neighbour order used when the destination is mostly to the east */
+	private static final int[] ORDER_EAST = {1, 3, 2, 4};
+	/** The neighbour order used when the destination is mostly to the north */
+	private static final int[] ORDER_NORTH = {4, 1, 3, 2};
+	/** The neighbour order used when the destination is mostly to the south */
+	private static final int[] ORDER_SOUTH = {2, 1, 3, 4};
+	
 	/** The set of nodes that we do not yet consider fully searched */
-	protected SortedList open = new SortedList();
+	protected BinaryHeap open = new BinaryHeap();
 	/** The map being searched */
-	protected TMXTileMapObject map;	
+	protected TileBasedMap map;	
 	/** The complete set of nodes across the map */
 	protected Node[][] nodes;
 	/** True if we allow diaganol movement */
 	protected boolean allowDiagMovement;
+	/** The heuristic used to determine which node to search first */
+	protected AStarHeuristic heuristic;
+	/** The number of the current search, nodes stamped with another number hold stale data */
+	protected int searchGeneration;
+	/** The number of nodes expanded by the last search */
+	protected int expandedCount;
 		
 	/**
-	 * Create a path finder 
+	 * Create a path finder that uses the Manhattan distance, scaled by the
+	 * cost of the cheapest tile on the map, as its heuristic. The cost of
+	 * each tile is read once, from the terrain array if the map is a
+	 * {@link TerrainMap} or through {@link TileBasedMap#getCost(Mover, int, int)}
+	 * otherwise.
 	 * 
 	 * @param map The map to be searched
 	 * @param allowDiagMovement True if the search should try diaganol movement
 	 */
-	public AStarPathFinder(TMXTileMapObject map,
+	public AStarPathFinder(TileBasedMap map,
 						   boolean allowDiagMovement) {
 		this.map = map;
 		this.allowDiagMovement = allowDiagMovement;
 		int width = map.getWidthInTiles();
 		int height = map.getHeightInTiles();
+		int[][] terrain = (map instanceof TerrainMap) ? ((TerrainMap) map).getTerrain() : null;
 		
+		int minimumCost = Integer.MAX_VALUE;
 		nodes = new Node[width][height];
 		for (int x=0;x<width;x++) {
 			for (int y=0;y<height;y++) {
-				nodes[x][y] = new Node(x,y, map.terrain[x][y]);
+				// terrain costs do not depend on the mover
+				int cost = (terrain != null) ? terrain[x][y] : (int) map.getCost(null, x, y);
+				nodes[x][y] = new Node(x,y, cost);
+				minimumCost = Math.min(minimumCost, cost);
 			}
 		}
+		heuristic = new ManhattanHeuristic(Math.max(0, minimumCost));
+	}
+	
+	/**
+	 * Create a path finder 
+	 * 
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 * @param heuristic The heuristic used to determine the search order of the map, it
+	 * must never overestimate the cost of reaching the target for the paths to be optimal
+	 */
+	public AStarPathFinder(TileBasedMap map, boolean allowDiagMovement, AStarHeuristic heuristic) {
+		this(map, allowDiagMovement);
+		this.heuristic = heuristic;
+	}
+	
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int)
+	 */
+	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {
+		Path path = new Path();
+		if (!findPath(mover, maxDistance, sx, sy, tx, ty, path)) {
+			return null;
+		}
+		return path;
 	}
 	
 	/**
-	 * @see PathFinder#findPath(Mover, int, int, int, int)
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int, Path)
 	 */
-	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {	
+	public boolean findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {	
 		// easy first check, if the destination is blocked, we can't get there
 		if (!this.isValidLocation(mover, tx, ty)) {
-			return null;
+			return false;
 		}else{
 			// If the distance of a straight line draw from the origin to the destination tile 
 			// is longer than the maxDistance to move, we can't get there.
 			if (Math.abs(tx - sx) > maxDistance || Math.abs(ty - sy) > maxDistance || Math.abs(tx - sx) + Math.abs(ty - sy) > maxDistance) {
-				return null;
+				return false;
 			}
 		}
 		
 		// The initial state for A*. The closed group is empty. Only the starting
 		// tile is in the open list.
-		closed.clear();
-		open.clear();
+		startSearch();
+		touch(nodes[sx][sy]);
 		nodes[sx][sy].depth = 0;
 		open.add(nodes[sx][sy]);
 		
 		//We haven't found any tile that reaches the destiny yet
-		nodes[tx][ty].parent = null;
+		touch(nodes[tx][ty]);
 		
 		//This loop will iterate until we run out of tiles that can
 		//be evaluated.
@@ -89,30 +144,18 @@ public class AStarPathFinder implements  PathFinder {
 				
 			//This array will store the coordinates of the next movements
 			//depending of the X or Y distance to the destination
-			int[] order = new int[4];
+			int[] order;
 			if(Math.abs(currentDistanceX) > Math.abs(currentDistanceY)){
 				if(currentDistanceX < 0){
-					order[0] = 3;	
-					order[1] = 2;	
-					order[2] = 4;	
-					order[3] = 1;	
+					order = ORDER_WEST;
 				}else{
-					order[0] = 1;	
-					order[1] = 3;	
-					order[2] = 2;	
-					order[3] = 4;
+					order = ORDER_EAST;
 				}
 			}else{
 				if(currentDistanceY < 0){
-					order[0] = 4;	
-					order[1] = 1;	
-					order[2] = 3;	
-					order[3] = 2;
+					order = ORDER_NORTH;
 				}else{
-					order[0] = 2;	
-					order[1] = 1;	
-					order[2] = 3;	
-					order[3] = 4;
+					order = ORDER_SOUTH;
 				}
 			}
 						
@@ -163,21 +206,19 @@ public class AStarPathFinder implements  PathFinder {
 					if (isValidLocation(mover,Nx,Ny) && (Math.abs(tx - Nx) + Math.abs(ty - Ny) <= maxDistance)) {						
 						// the cost to get to this node is cost the cost to reach this node. 
 						Node neighbour = nodes[Nx][Ny];
+						touch(neighbour);
 						int nextStepCost = (int) (neighbour.cost + current.depth);
 						
 						// If the current evaluation finds that this movement have less cost than
 						// previously evaluated, then the tile can be evaluated again to find a better path.
-						if (nextStepCost < neighbour.depth) {
-							if (inOpenList(neighbour)) {
-								removeFromOpen(neighbour);
-							}
-							if (inClosedList(neighbour)) {
-								removeFromClosed(neighbour);
-							}
+						// A tile still in the open list just gets its key decreased in place.
+						boolean improved = nextStepCost < neighbour.depth;
+						if (improved && inClosedList(neighbour)) {
+							removeFromClosed(neighbour);
 						}
 						
-						if (!inOpenList(neighbour) && !(inClosedList(neighbour))) {
-							neighbour.heuristic = (float) Math.sqrt((currentDistanceX * currentDistanceX)+(currentDistanceY*currentDistanceY));
+						if (!inClosedList(neighbour) && (improved || !inOpenList(neighbour))) {
+							neighbour.heuristic = heuristic.getCost(mover, Nx, Ny, tx, ty);
 							// If moving to the neighbor tile doenst exceeds our movement range, then can be added.
 							// This check is done twice in case this tile has been reevaluated previously for a better path.
 							if(neighbour.cost + current.depth <= maxDistance)
@@ -191,24 +232,30 @@ public class AStarPathFinder implements  PathFinder {
 		}
 
 		// since we've got an empty open list or we've run out of search 
-		// there was no path. Just return null
+		// there was no path.
 		if (nodes[tx][ty].parent == null) {
-			return null;
+			return false;
 		}
 		
 		// At this point we've definitely found a path so we can uses the parent
 		// references of the nodes to find out way from the target location back
-		// to the start recording the nodes on the way.
-		Path path = new Path();
+		// to the start recording the nodes on the way. The steps are counted
+		// first so that the path can be filled from the back.
+		int length = 1;
+		for (Node node = nodes[tx][ty]; node != nodes[sx][sy]; node = node.parent) {
+			length++;
+		}
+		path.setLength(length);
 		Node target = nodes[tx][ty];
 		while (target != nodes[sx][sy]) {
-			path.prependStep(target.x, target.y);
+			length--;
+			path.setStep(length, target.x, target.y);
 			target = target.parent;
 		}
-		path.prependStep(sx,sy);
+		path.setStep(0, sx, sy);
 		
 		// thats it, we have our path 
-		return path;
+		return true;
 	}
 
 	/**
@@ -220,15 +267,20 @@ public class AStarPathFinder implements  PathFinder {
 	 * @param maxDistance The max distance the mover will move before running out of stamina
 	 * @param sx The x coordinate of the start location
 	 * @param sy The y coordinate of the start location
+	 * @param isMovekRange True to find the tiles the mover can move to, false to find
+	 * the tiles it can attack, see {@link #findAttackRange(int, int, int)}
 	 * @return The ArrayList that contains all the tiles that can be moved.
 	 */
 	public ArrayList<Node> findRange(Mover mover, int maxDistance, int sx, int sy, boolean isMovekRange){						
+		if (!isMovekRange) {
+			return findAttackRange(maxDistance, sx, sy);
+		}
 		ArrayList<Node> range = new ArrayList<AStarPathFinder.Node>();
 		
 		// The initial state for A*. The closed group is empty. Only the starting
 		// tile is in the open list.
-		closed.clear();
-		open.clear();
+		startSearch();
+		touch(nodes[sx][sy]);
 		nodes[sx][sy].depth = 0;
 		open.add(nodes[sx][sy]);
 			
@@ -246,30 +298,18 @@ public class AStarPathFinder implements  PathFinder {
 				
 			//This array will store the coordinates of the next movements
 			//depending of the X or Y distance to the destination
-			int[] order = new int[4];
+			int[] order;
 			if(Math.abs(currentDistanceX) > Math.abs(currentDistanceY)){
 				if(currentDistanceX < 0){
-					order[0] = 3;	
-					order[1] = 2;	
-					order[2] = 4;	
-					order[3] = 1;	
+					order = ORDER_WEST;
 				}else{
-					order[0] = 1;	
-					order[1] = 3;	
-					order[2] = 2;	
-					order[3] = 4;
+					order = ORDER_EAST;
 				}
 			}else{
 				if(currentDistanceY < 0){
-					order[0] = 4;	
-					order[1] = 1;	
-					order[2] = 3;	
-					order[3] = 2;
+					order = ORDER_NORTH;
 				}else{
-					order[0] = 2;	
-					order[1] = 1;	
-					order[2] = 3;	
-					order[3] = 4;
+					order = ORDER_SOUTH;
 				}
 			}
 						
@@ -317,35 +357,32 @@ public class AStarPathFinder implements  PathFinder {
 
 					// The neighbor tile will only evaluated if is a valid place and if is not outside of the movement range
 					// This last check will be done again.
-					if ( (isMovekRange && (isValidLocation(mover,Nx,Ny) && (Math.abs(sx - Nx) + Math.abs(sy - Ny) <= maxDistance))) ||
-						 (!isMovekRange && (Math.abs(sx - Nx) + Math.abs(sy - Ny) <= maxDistance))) {						
+					if (isValidLocation(mover,Nx,Ny) && (Math.abs(sx - Nx) + Math.abs(sy - Ny) <= maxDistance)) {						
 						// the cost to get to this node is cost the cost to reach this node. 
 						Node neighbour = nodes[Nx][Ny];
-						if(!isMovekRange){
-							neighbour.cost = 1;
-						}
+						touch(neighbour);
 						int nextStepCost = (int) (neighbour.cost + current.depth);
 						
 						// If the current evaluation finds that this movement have less cost than
 						// previously evaluated, then the tile can be evaluated again to find a better path.
-						if (nextStepCost < neighbour.depth) {
-							if (inOpenList(neighbour)) {
-								removeFromOpen(neighbour);
-							}
-							if (inClosedList(neighbour)) {
-								removeFromClosed(neighbour);
-							}
+						// A tile still in the open list just gets its key decreased in place.
+						boolean improved = nextStepCost < neighbour.depth;
+						if (improved && inClosedList(neighbour)) {
+							removeFromClosed(neighbour);
 						}
 						
-						if (!inOpenList(neighbour) && !(inClosedList(neighbour))) {
-							neighbour.heuristic = (float) Math.sqrt((currentDistanceX * currentDistanceX)+(currentDistanceY*currentDistanceY));
+						if (!inClosedList(neighbour) && (improved || !inOpenList(neighbour))) {
+							// there is no target, the range is searched in cost order
+							neighbour.heuristic = 0;
 							// If moving to the neighbor tile doenst exceeds our movement range, then can be added.
 							// This check is done twice in case this tile has been reevaluated previously for a better path.
 							if(neighbour.cost + current.depth <= maxDistance)
 							{
 								neighbour.setParent(current);
 								addToOpen(neighbour);
-								if(!range.contains(neighbour)){
+								// the flag is reset with the node, so this is no search through the range
+								if(!neighbour.inRange){
+									neighbour.inRange = true;
 									range.add(neighbour);
 								}
 		 					}
@@ -356,6 +393,80 @@ public class AStarPathFinder implements  PathFinder {
 		return range;
 	}
 	
+	/**
+	 * Find all the tiles that can be attacked from a location. Attacks ignore
+	 * terrain and blocking, so these are the tiles within the Manhattan
+	 * distance given, worked out directly without a search. The nodes are
+	 * only read, so this can be called between path searches freely.
+	 * 
+	 * @param maxDistance The reach of the attack
+	 * @param sx The x coordinate of the attacker
+	 * @param sy The y coordinate of the attacker
+	 * @return The nodes of the tiles that can be attacked, without the attacker's own
+	 */
+	public ArrayList<Node> findAttackRange(int maxDistance, int sx, int sy) {
+		ArrayList<Node> range = new ArrayList<AStarPathFinder.Node>();
+		int minY = Math.max(0, sy - maxDistance);
+		int maxY = Math.min(nodes[0].length - 1, sy + maxDistance);
+		for (int y=minY;y<=maxY;y++) {
+			int reach = maxDistance - Math.abs(y - sy);
+			int minX = Math.max(0, sx - reach);
+			int maxX = Math.min(nodes.length - 1, sx + reach);
+			for (int x=minX;x<=maxX;x++) {
+				if (AttackRange.contains(sx, sy, maxDistance, x, y)) {
+					range.add(nodes[x][y]);
+				}
+			}
+		}
+		return range;
+	}
+	
+	/**
+	 * Get the number of nodes expanded by the last search
+	 * 
+	 * @return The number of nodes moved to the closed list
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+	
+	/**
+	 * Reset the open and closed lists for a new search. Nodes are not
+	 * cleared here, instead the search generation moves on and every node
+	 * is lazily reset by {@link #touch(Node)} the first time it is reached.
+	 */
+	protected void startSearch() {
+		open.clear();
+		expandedCount = 0;
+		searchGeneration++;
+		if (searchGeneration == Integer.MAX_VALUE) {
+			// the stamps are about to wrap around, reset them all once
+			for (int x=0;x<nodes.length;x++) {
+				for (int y=0;y<nodes[x].length;y++) {
+					nodes[x][y].generation = 0;
+				}
+			}
+			searchGeneration = 1;
+		}
+	}
+	
+	/**
+	 * Make sure the search data of a node belongs to the current search,
+	 * discarding whatever was left in it by a previous one.
+	 * 
+	 * @param node The node about to be read or written by the search
+	 */
+	protected void touch(Node node) {
+		if (node.generation != searchGeneration) {
+			node.generation = searchGeneration;
+			node.depth = Integer.MAX_VALUE;
+			node.parent = null;
+			node.heapIndex = -1;
+			node.closed = false;
+			node.inRange = false;
+		}
+	}
+	
 	/**
 	 * Get the first element from the open list. This is the next
 	 * one to be searched.
@@ -363,11 +474,12 @@ public class AStarPathFinder implements  PathFinder {
 	 * @return The first element in the open list
 	 */
 	protected Node getFirstInOpen() {
-		return (Node) open.first();
+		return open.first();
 	}
 	
 	/**
-	 * Add a node to the open list
+	 * Add a node to the open list. If the node is already in the open
+	 * list its position is updated to reflect its new cost.
 	 * 
 	 * @param node The node to be added to the open list
 	 */
@@ -400,7 +512,8 @@ public class AStarPathFinder implements  PathFinder {
 	 * @param node The node to add to the closed list
 	 */
 	protected void addToClosed(Node node) {
-		closed.add(node);
+		node.closed = true;
+		expandedCount++;
 	}
 	
 	/**
@@ -410,7 +523,7 @@ public class AStarPathFinder implements  PathFinder {
 	 * @return True if the node specified is in the closed list
 	 */
 	protected boolean inClosedList(Node node) {
-		return closed.contains(node);
+		return node.generation == searchGeneration && node.closed;
 	}
 	
 	/**
@@ -419,7 +532,7 @@ public class AStarPathFinder implements  PathFinder {
 	 * @param node The node to remove from the closed list
 	 */
 	protected void removeFromClosed(Node node) {
-		closed.remove(node);
+		node.closed = false;
 	}
 	
 	/**
@@ -445,65 +558,158 @@ public class AStarPathFinder implements  PathFinder {
 	}
 	
 	/**
+	 * An indexed binary min-heap of nodes ordered by {@link Node#compareTo(Node)}.
+	 * Every node remembers its own slot in the heap, which gives constant time
+	 * membership checks and logarithmic time insertion, removal and key updates.
 	 *
 	 * @author Cesar Ramirez
 	 */
-	public class SortedList {
-		/** The list of elements */
-		private ArrayList<Node> list = new ArrayList<Node>();
+	public class BinaryHeap {
+		/** The heap storage, the root of the heap is at index 0 */
+		private Node[] heap = new Node[64];
+		/** The number of elements in the heap */
+		private int size;
 		
 		/**
-		 * Retrieve the first element from the list
+		 * Retrieve the first element from the heap, the one with the lowest cost
 		 *  
-		 * @return The first element from the list
+		 * @return The first element from the heap
 		 */
-		public Object first() {
-			return list.get(0);
+		public Node first() {
+			return heap[0];
 		}
 		
 		/**
-		 * Empty the list
+		 * Empty the heap
 		 */
 		public void clear() {
-			list.clear();
+			// stale heap indexes left in the nodes are harmless, contains()
+			// checks the slot they point to
+			size = 0;
 		}
 		
 		/**
-		 * Add an element to the list - causes sorting
+		 * Add an element to the heap. If the element is already in the heap
+		 * it is moved to the position matching its current cost.
 		 * 
 		 * @param o The element to add
 		 */
 		public void add(Node o) {
-			list.add(o);
-			Collections.sort(list);
+			if (contains(o)) {
+				update(o);
+				return;
+			}
+			if (size == heap.length) {
+				Node[] grown = new Node[size * 2];
+				System.arraycopy(heap, 0, grown, 0, size);
+				heap = grown;
+			}
+			heap[size] = o;
+			o.heapIndex = size;
+			size++;
+			siftUp(o.heapIndex);
 		}
 		
 		/**
-		 * Remove an element from the list
+		 * Restore the position of an element whose cost has changed
+		 * 
+		 * @param o The element that has changed
+		 */
+		public void update(Node o) {
+			siftDown(siftUp(o.heapIndex));
+		}
+		
+		/**
+		 * Remove an element from the heap
 		 * 
 		 * @param o The element to remove
 		 */
-		public void remove(Object o) {
-			list.remove(o);
+		public void remove(Node o) {
+			if (!contains(o)) {
+				return;
+			}
+			int index = o.heapIndex;
+			size--;
+			Node last = heap[size];
+			heap[size] = null;
+			o.heapIndex = -1;
+			if (index != size) {
+				heap[index] = last;
+				last.heapIndex = index;
+				siftDown(siftUp(index));
+			}
 		}
 	
 		/**
-		 * Get the number of elements in the list
+		 * Get the number of elements in the heap
 		 * 
-		 * @return The number of element in the list
+		 * @return The number of element in the heap
  		 */
 		public int size() {
-			return list.size();
+			return size;
 		}
 		
 		/**
-		 * Check if an element is in the list
+		 * Check if an element is in the heap
 		 * 
 		 * @param o The element to search for
-		 * @return True if the element is in the list
+		 * @return True if the element is in the heap
 		 */
-		public boolean contains(Object o) {
-			return list.contains(o);
+		public boolean contains(Node o) {
+			int index = o.heapIndex;
+			return index >= 0 && index < size && heap[index] == o;
+		}
+		
+		/**
+		 * Move the element at the given index towards the root until its
+		 * parent is not more expensive than it.
+		 * 
+		 * @param index The index of the element to move
+		 * @return The final index of the element
+		 */
+		private int siftUp(int index) {
+			Node node = heap[index];
+			while (index > 0) {
+				int parentIndex = (index - 1) >> 1;
+				Node parent = heap[parentIndex];
+				if (node.compareTo(parent) >= 0) {
+					break;
+				}
+				heap[index] = parent;
+				parent.heapIndex = index;
+				index = parentIndex;
+			}
+			heap[index] = node;
+			node.heapIndex = index;
+			return index;
+		}
+		
+		/**
+		 * Move the element at the given index towards the leaves until none
+		 * of its children is cheaper than it.
+		 * 
+		 * @param index The index of the element to move
+		 */
+		private void siftDown(int index) {
+			Node node = heap[index];
+			int half = size >> 1;
+			while (index < half) {
+				int childIndex = (index << 1) + 1;
+				Node child = heap[childIndex];
+				int rightIndex = childIndex + 1;
+				if (rightIndex < size && heap[rightIndex].compareTo(child) < 0) {
+					childIndex = rightIndex;
+					child = heap[rightIndex];
+				}
+				if (node.compareTo(child) <= 0) {
+					break;
+				}
+				heap[index] = child;
+				child.heapIndex = index;
+				index = childIndex;
+			}
+			heap[index] = node;
+			node.heapIndex = index;
 		}
 	}
 	
@@ -520,10 +726,17 @@ public class AStarPathFinder implements  PathFinder {
 		/** The search depth of this node */
 		public int depth;
 		/** The heuristic cost of this node */
-		@SuppressWarnings("unused")
 		public float heuristic;
 		/** The parent of this node, how we reached it in the search */
 		public Node parent;
+		/** The index of this node in the open list heap, -1 if it is not there */
+		public int heapIndex = -1;
+		/** The search generation the depth, parent and list flags belong to */
+		public int generation;
+		/** True if the node is in the closed list of its generation */
+		public boolean closed;
+		/** True if the node was added to the range found in its generation */
+		public boolean inRange;
 		
 		
 		/**
@@ -552,18 +765,26 @@ public class AStarPathFinder implements  PathFinder {
 		}
 		
 		/**
+		 * Nodes are ordered by their estimated total cost, depth plus heuristic.
+		 * Among nodes with the same estimate the deepest comes first, as it is
+		 * the one closest to the target.
+		 * 
 		 * @see Comparable#compareTo(Object)
 		 */
 		public int compareTo(Node other) {
 			Node o = other;
 			
-			float f = depth;
-			float of = o.depth;
+			float f = heuristic + depth;
+			float of = o.heuristic + o.depth;
 			
 			if (f < of) {
 				return -1;
 			} else if (f > of) {
 				return 1;
+			} else if (depth > o.depth) {
+				return -1;
+			} else if (depth < o.depth) {
+				return 1;
 			} else {
 				return 0;
 			}
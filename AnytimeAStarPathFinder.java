@@ -0,0 +1,364 @@
+package com.qylla.util.pathfinding;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.AnytimePathFinder;
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.PathFinder;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+
+/**
+ * A path finder that trades path quality for speed, using weighted A* and
+ * its anytime form, ARA*. The heuristic is multiplied by a weight above 1,
+ * which makes the search head for the target much more eagerly and expand
+ * far fewer tiles, at the price of paths that may cost up to the weight
+ * times as much as the cheapest one.
+ *
+ * With a weight step above 0 the search carries on once a path is found:
+ * the weight is lowered by the step and the search is repaired, reusing
+ * the work done so far, until the weight reaches 1 and the path is the
+ * cheapest. With a step of 0 this is plain weighted A*. A budget of time
+ * or of expanded tiles can stop the search at any point, the best path so
+ * far is returned together with the bound on its cost, worked out from
+ * the open tiles, and {@link #improvePath(Path, long, int)} carries on
+ * from there.
+ *
+ * The paths of the methods without a budget are as good as the finder is
+ * set to make them. Costs and blocking are read from the movement layers
+ * of a GridPathFinder. A finder keeps working state between calls and must
+ * only be used by one thread at a time.
+ *
+ * @author Cesar Ramirez
+ */
+public class AnytimeAStarPathFinder implements AnytimePathFinder {
+	/** The number of tiles expanded between looks at the clock */
+	private static final int CLOCK_INTERVAL = 32;
+
+	/** The finder holding the map data */
+	private GridPathFinder finder;
+	/** The weight of the heuristic in the first pass of a search */
+	private float initialWeight;
+	/** The amount the weight is lowered by after each pass, 0 to stop after the first */
+	private float weightStep;
+	/** The working state of the search, kept between calls */
+	private SearchContext context;
+	/** The pass each tile was last expanded in */
+	private int[] closedIn;
+	/** The pass each tile was last put aside as inconsistent in */
+	private int[] inconsistentIn;
+	/** The tiles that got cheaper after being expanded in this pass */
+	private int[] inconsistent = new int[16];
+	/** The number of inconsistent tiles */
+	private int inconsistentCount;
+	/** The number of the current pass, never reset so old marks never match */
+	private int pass;
+	/** The weight of the heuristic in the current pass */
+	private float weight;
+	/** The weight of the last pass that was completed, 0 if none was */
+	private float completedWeight;
+	/** True once the search can't improve its path any further */
+	private boolean finished;
+	/** The cheapest path found by the search so far */
+	private Path best = new Path();
+	/** The cost of the cheapest path found so far, Integer.MAX_VALUE if there is none */
+	private int bestCost;
+
+	/** The mover of the search */
+	private Mover mover;
+	/** The movement layer of the mover */
+	private int[] layer;
+	/** The heuristic of the finder read when the search started */
+	private AStarHeuristic heuristic;
+	/** The estimate checked against the budget, null if it is the heuristic itself */
+	private AStarHeuristic bound;
+	/** The max distance the mover will move */
+	private int maxDistance;
+	/** The x coordinate of the target location */
+	private int tx;
+	/** The y coordinate of the target location */
+	private int ty;
+	/** The index of the start tile */
+	private int start;
+	/** The index of the target tile, -1 before the first search */
+	private int target = -1;
+	/** The number of tiles expanded by the last call */
+	private int expandedCount;
+
+	/**
+	 * Create a path finder
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 * @param initialWeight The weight of the heuristic in the first pass, at least 1
+	 * @param weightStep The amount the weight is lowered by after each pass,
+	 * 0 for weighted A* that stops at the first path
+	 */
+	public AnytimeAStarPathFinder(TileBasedMap map, boolean allowDiagMovement, float initialWeight, float weightStep) {
+		this(new GridPathFinder(map, allowDiagMovement), initialWeight, weightStep);
+	}
+
+	/**
+	 * Create a path finder using the map data and heuristic of another finder
+	 *
+	 * @param finder The finder holding the costs of the map
+	 * @param initialWeight The weight of the heuristic in the first pass, at least 1
+	 * @param weightStep The amount the weight is lowered by after each pass,
+	 * 0 for weighted A* that stops at the first path
+	 */
+	public AnytimeAStarPathFinder(GridPathFinder finder, float initialWeight, float weightStep) {
+		this.finder = finder;
+		this.initialWeight = Math.max(1, initialWeight);
+		this.weightStep = Math.max(0, weightStep);
+		context = finder.createContext();
+		closedIn = new int[finder.width * finder.height];
+		inconsistentIn = new int[finder.width * finder.height];
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int)
+	 */
+	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {
+		Path path = new Path();
+		if (!findPath(mover, maxDistance, sx, sy, tx, ty, path)) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		return findPath(mover, maxDistance, sx, sy, tx, ty, path, 0, 0) >= 1;
+	}
+
+	/**
+	 * @see AnytimePathFinder#findPath(Mover, int, int, int, int, int, Path, long, int)
+	 */
+	public float findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path, long maxNanos, int maxExpansions) {
+		this.mover = mover;
+		this.maxDistance = maxDistance;
+		this.tx = tx;
+		this.ty = ty;
+		start = sy * finder.width + sx;
+		target = ty * finder.width + tx;
+		layer = finder.getLayer(mover);
+		// read once, every pass of the search uses the same heuristic
+		heuristic = finder.heuristic;
+		// pruning by the budget needs an estimate that never overestimates for this mover
+		bound = (heuristic == finder.layerHeuristic) ? null : finder.getLayerHeuristic(mover);
+		weight = initialWeight;
+		completedWeight = 0;
+		bestCost = Integer.MAX_VALUE;
+		inconsistentCount = 0;
+		pass++;
+		context.startSearch();
+		context.touch(target);
+		// easy first check, if the destination is blocked, we can't get there
+		finished = !finder.isValidLocation(layer, tx, ty);
+		if (!finished) {
+			context.touch(start);
+			context.depth[start] = 0;
+			context.addToOpen(start, weight * heuristic(start));
+		}
+		return improvePath(path, maxNanos, maxExpansions);
+	}
+
+	/**
+	 * @see AnytimePathFinder#improvePath(Path, long, int)
+	 */
+	public float improvePath(Path path, long maxNanos, int maxExpansions) {
+		expandedCount = 0;
+		if (target < 0) {
+			return NO_PATH;
+		}
+		long deadline = (maxNanos > 0) ? System.nanoTime() + maxNanos : 0;
+		while (!finished && runPass(deadline, maxExpansions)) {
+			if (context.depth[target] == Integer.MAX_VALUE) {
+				// the tiles put aside may still lead to the target within the budget
+				finished = (inconsistentCount == 0);
+				if (!finished) {
+					startPass(Math.max(1, weight - weightStep));
+				}
+				continue;
+			}
+			completedWeight = weight;
+			updateBest();
+			if (weight <= 1 || weightStep == 0 || getBound() <= 1) {
+				finished = true;
+			} else {
+				startPass(Math.max(1, weight - weightStep));
+			}
+		}
+
+		updateBest();
+		if (bestCost == Integer.MAX_VALUE) {
+			return finished ? NO_PATH : NOT_FOUND_YET;
+		}
+		path.set(best);
+		return getBound();
+	}
+
+	/**
+	 * Keep the path to the target if it is cheaper than the best one so far.
+	 * Halfway through a pass a tile may have got cheaper before the tiles
+	 * reached from it did, so the path can cost less than the target's cost
+	 * and a later path is not always cheaper than an earlier one.
+	 */
+	private void updateBest() {
+		if (context.depth[target] == Integer.MAX_VALUE) {
+			return;
+		}
+		int cost = 0;
+		for (int tile = target; tile != start; tile = context.parent[tile]) {
+			cost += layer[tile];
+		}
+		if (cost < bestCost) {
+			bestCost = cost;
+			finder.buildPath(context.parent, start, target, best);
+		}
+	}
+
+	/**
+	 * Expand tiles until the target is the best open tile at the current
+	 * weight or the budget runs out
+	 *
+	 * @param deadline The time to stop at, as given by System.nanoTime(), 0 for no limit
+	 * @param maxExpansions The number of tiles this call may expand, 0 for no limit
+	 * @return True if the pass was completed, false if the budget ran out
+	 */
+	private boolean runPass(long deadline, int maxExpansions) {
+		int[] depth = context.depth;
+		IndexHeap open = context.open;
+		int width = finder.width;
+		int directions = finder.allowDiagMovement ? 8 : 4;
+		while (!open.isEmpty() && depth[target] > open.peekKey()) {
+			if (maxExpansions > 0 && expandedCount >= maxExpansions) {
+				return false;
+			}
+			if (deadline != 0 && expandedCount % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+				return false;
+			}
+
+			int current = open.pop();
+			closedIn[current] = pass;
+			context.expandedCount++;
+			expandedCount++;
+
+			int cx = current % width;
+			int cy = current / width;
+			for (int i=0;i<directions;i++) {
+				int nx = cx + GridPathFinder.DX[i];
+				int ny = cy + GridPathFinder.DY[i];
+				if (!finder.isValidLocation(layer, nx, ny)) {
+					continue;
+				}
+				// a diagonal step may not cut the corner of a blocked tile
+				if (i >= 4 && (!finder.isValidLocation(layer, nx, cy) || !finder.isValidLocation(layer, cx, ny))) {
+					continue;
+				}
+
+				int neighbour = ny * width + nx;
+				context.touch(neighbour);
+				context.neighbourCount++;
+				int nextStepCost = depth[current] + layer[neighbour];
+				if (nextStepCost > maxDistance || nextStepCost >= depth[neighbour]) {
+					continue;
+				}
+				float estimate = heuristic(neighbour);
+				float lowest = (bound == null) ? estimate : bound.getCost(mover, nx, ny, tx, ty);
+				if (nextStepCost + lowest > maxDistance) {
+					continue;
+				}
+				depth[neighbour] = nextStepCost;
+				context.parent[neighbour] = current;
+				if (closedIn[neighbour] != pass) {
+					context.addToOpen(neighbour, weight * estimate);
+				} else if (inconsistentIn[neighbour] != pass) {
+					// expanded already in this pass, it waits for the next one
+					inconsistentIn[neighbour] = pass;
+					addInconsistent(neighbour);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Start a new pass with a lower weight. The inconsistent tiles go back
+	 * into the open list and every open tile is ordered by the new weight.
+	 *
+	 * @param newWeight The weight of the heuristic in the new pass
+	 */
+	private void startPass(float newWeight) {
+		weight = newWeight;
+		pass++;
+		IndexHeap open = context.open;
+		for (int i=0;i<open.size();i++) {
+			addInconsistent(open.get(i));
+		}
+		open.clear();
+		for (int i=0;i<inconsistentCount;i++) {
+			context.addToOpen(inconsistent[i], weight * heuristic(inconsistent[i]));
+		}
+		inconsistentCount = 0;
+	}
+
+	/**
+	 * Get the suboptimality bound of the best path. Every route cheaper than
+	 * the path goes through an open or inconsistent tile, so the cheapest
+	 * route costs at least their lowest cost plus estimate.
+	 *
+	 * @return The most the path can cost compared to the cheapest one
+	 */
+	private float getBound() {
+		int[] depth = context.depth;
+		float lowest = Float.MAX_VALUE;
+		IndexHeap open = context.open;
+		for (int i=0;i<open.size();i++) {
+			int tile = open.get(i);
+			lowest = Math.min(lowest, depth[tile] + heuristic(tile));
+		}
+		for (int i=0;i<inconsistentCount;i++) {
+			lowest = Math.min(lowest, depth[inconsistent[i]] + heuristic(inconsistent[i]));
+		}
+		float bound = (bestCost <= lowest) ? 1 : bestCost / lowest;
+		if (completedWeight > 0) {
+			bound = Math.min(bound, completedWeight);
+		}
+		return Math.max(1, bound);
+	}
+
+	/**
+	 * Put a tile aside until the next pass
+	 *
+	 * @param tile The index of the tile
+	 */
+	private void addInconsistent(int tile) {
+		if (inconsistentCount == inconsistent.length) {
+			int[] grown = new int[inconsistentCount * 2];
+			System.arraycopy(inconsistent, 0, grown, 0, inconsistentCount);
+			inconsistent = grown;
+		}
+		inconsistent[inconsistentCount] = tile;
+		inconsistentCount++;
+	}
+
+	/**
+	 * Estimate the cost of going from a tile to the target
+	 *
+	 * @param tile The index of the tile
+	 * @return The heuristic cost, without the weight
+	 */
+	private float heuristic(int tile) {
+		return heuristic.getCost(mover, tile % finder.width, tile / finder.width, tx, ty);
+	}
+
+	/**
+	 * Get the number of tiles expanded by the last call
+	 *
+	 * @return The number of tiles taken out of the open list
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+}
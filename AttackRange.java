@@ -0,0 +1,54 @@
+package com.qylla.util.pathfinding;
+
+/**
+ * The tiles that can be attacked from a location. Attacks are not blocked
+ * by terrain or units and every tile counts as one step, so the range is
+ * the diamond of tiles within a Manhattan distance of the attacker. It is
+ * worked out directly, without searching and without touching the state
+ * of any path finder.
+ *
+ * @author Cesar Ramirez
+ */
+public class AttackRange {
+	/**
+	 * Check if a tile can be attacked from a location
+	 *
+	 * @param sx The x coordinate of the attacker
+	 * @param sy The y coordinate of the attacker
+	 * @param maxDistance The reach of the attack
+	 * @param x The x coordinate of the tile to check
+	 * @param y The y coordinate of the tile to check
+	 * @return True if the tile is in range, the attacker's own tile never is
+	 */
+	public static boolean contains(int sx, int sy, int maxDistance, int x, int y) {
+		int distance = Math.abs(x - sx) + Math.abs(y - sy);
+		return distance > 0 && distance <= maxDistance;
+	}
+
+	/**
+	 * Fill a range with the tiles that can be attacked from a location. The
+	 * cost of each tile is its distance from the attacker.
+	 *
+	 * @param sx The x coordinate of the attacker
+	 * @param sy The y coordinate of the attacker
+	 * @param maxDistance The reach of the attack
+	 * @param range The range to overwrite, its size is the size of the map
+	 */
+	public static void fill(int sx, int sy, int maxDistance, MovementRange range) {
+		range.clear();
+		int width = range.getWidthInTiles();
+		int height = range.getHeightInTiles();
+		int minY = Math.max(0, sy - maxDistance);
+		int maxY = Math.min(height - 1, sy + maxDistance);
+		for (int y=minY;y<=maxY;y++) {
+			int reach = maxDistance - Math.abs(y - sy);
+			int minX = Math.max(0, sx - reach);
+			int maxX = Math.min(width - 1, sx + reach);
+			for (int x=minX;x<=maxX;x++) {
+				if ((x != sx) || (y != sy)) {
+					range.add(x, y, Math.abs(x - sx) + Math.abs(y - sy));
+				}
+			}
+		}
+	}
+}
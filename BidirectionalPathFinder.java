@@ -0,0 +1,197 @@
+package com.qylla.util.pathfinding;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+
+/**
+ * A path finder that searches from both ends at once. One search grows
+ * from the start towards the target and another from the target back
+ * towards the start, and the path is where they meet. On long queries
+ * across weighted terrain each frontier only has to cover about half of
+ * the distance, and the tiles a single search would have expanded around
+ * the start looking for a way round an expensive patch are often never
+ * reached. On open maps with uniform costs plain A* is already close to
+ * ideal and this finder expands more tiles, not fewer.
+ *
+ * Both searches are ordered by the same potential of each tile, see
+ * {@link #getPotential(Mover, int, int, int, int, int, int)}, and the side
+ * with the fewer open tiles is expanded next. Every time one search reaches
+ * a tile the other has reached, the route through it is kept if it is the
+ * cheapest so far, and the searches stop once the lowest keys of the two
+ * open lists add up to that route. The paths found cost exactly as much as
+ * those of {@link GridPathFinder}, as long as the heuristic is consistent,
+ * never dropping by more than a step costs, which the default ones are.
+ * Tiles that can't be part of a path within the movement budget are not
+ * opened by either search.
+ *
+ * The backward search runs in a second context kept in
+ * {@link SearchContext#reverse}, created the first time a context is used
+ * by this finder.
+ *
+ * @author Cesar Ramirez
+ */
+public class BidirectionalPathFinder extends GridPathFinder {
+	/**
+	 * Create a path finder
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 */
+	public BidirectionalPathFinder(TileBasedMap map, boolean allowDiagMovement) {
+		super(map, allowDiagMovement);
+	}
+
+	/**
+	 * @see GridPathFinder#findPath(SearchContext, Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(SearchContext context, Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		if (context.reverse == null) {
+			context.reverse = createContext();
+		}
+		SearchContext forward = context;
+		SearchContext backward = context.reverse;
+		forward.startSearch();
+		backward.startSearch();
+		int[] layer = getLayer(mover);
+		// read once, a heuristic swapped in by another thread takes effect on the next search
+		AStarHeuristic heuristic = this.heuristic;
+		// the given heuristic orders the searches, the budget is only checked against the layer's own
+		AStarHeuristic bound = getLayerHeuristic(mover);
+		SearchTrace trace = context.trace;
+		int start = sy * width + sx;
+		int target = ty * width + tx;
+		if (trace != null) {
+			trace.record(SearchTrace.START, start, target);
+		}
+		// easy first check, if the destination is blocked, we can't get there
+		if (!isValidLocation(layer, tx, ty)) {
+			if (trace != null) {
+				trace.record(SearchTrace.FINISH, target, -1);
+			}
+			return false;
+		}
+
+		forward.touch(start);
+		forward.depth[start] = 0;
+		forward.addToOpen(start, getPotential(heuristic, mover, sx, sy, sx, sy, tx, ty));
+		backward.touch(target);
+		backward.depth[target] = 0;
+		backward.addToOpen(target, -getPotential(heuristic, mover, tx, ty, sx, sy, tx, ty));
+
+		// the cheapest route found so far and the tile where its halves meet
+		int best = Integer.MAX_VALUE;
+		int meeting = -1;
+		if (start == target) {
+			best = 0;
+			meeting = start;
+		}
+
+		int directions = allowDiagMovement ? 8 : 4;
+		while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+			// no route left between the two open lists can be cheaper than the best one
+			if (best <= forward.open.peekKey() + backward.open.peekKey()) {
+				break;
+			}
+
+			boolean isForward = forward.open.size() <= backward.open.size();
+			SearchContext side = isForward ? forward : backward;
+			SearchContext other = isForward ? backward : forward;
+			int current = side.open.pop();
+			side.state[current] = SearchContext.CLOSED;
+			side.expandedCount++;
+			if (trace != null) {
+				trace.record(SearchTrace.EXPAND, current, side.depth[current]);
+			}
+			// a cheapest path never passes through its own ends
+			if (current == (isForward ? target : start)) {
+				continue;
+			}
+
+			int cx = current % width;
+			int cy = current / width;
+			for (int i=0;i<directions;i++) {
+				int nx = cx + DX[i];
+				int ny = cy + DY[i];
+				int neighbour = ny * width + nx;
+				// going backwards the neighbour is a tile a step into current
+				// starts from, and the start is never checked for blocking
+				if (!isValidLocation(layer, nx, ny) && (isForward || nx != sx || ny != sy)) {
+					continue;
+				}
+				if (i >= 4 && (!isValidLocation(layer, nx, cy) || !isValidLocation(layer, cx, ny))) {
+					continue;
+				}
+
+				side.touch(neighbour);
+				context.neighbourCount++;
+				int nextStepCost = side.depth[current] + (isForward ? layer[neighbour] : layer[current]);
+				if (nextStepCost > maxDistance || nextStepCost >= side.depth[neighbour]) {
+					continue;
+				}
+				// the rest of the way from the start or to the target is at least the estimate
+				float remaining = isForward ? bound.getCost(mover, nx, ny, tx, ty)
+						: bound.getCost(mover, sx, sy, nx, ny);
+				if (nextStepCost + remaining > maxDistance) {
+					continue;
+				}
+				if (side.state[neighbour] == SearchContext.CLOSED) {
+					context.reopenedCount++;
+				}
+				if (trace != null) {
+					trace.record((side.depth[neighbour] == Integer.MAX_VALUE) ? SearchTrace.PUSH : SearchTrace.RELAX, neighbour, nextStepCost);
+				}
+				side.depth[neighbour] = nextStepCost;
+				side.parent[neighbour] = current;
+				float potential = getPotential(heuristic, mover, nx, ny, sx, sy, tx, ty);
+				side.addToOpen(neighbour, isForward ? potential : -potential);
+
+				other.touch(neighbour);
+				if (other.depth[neighbour] != Integer.MAX_VALUE && nextStepCost + other.depth[neighbour] < best) {
+					best = nextStepCost + other.depth[neighbour];
+					meeting = neighbour;
+				}
+			}
+		}
+		context.expandedCount = forward.expandedCount + backward.expandedCount;
+		expandedCount = context.expandedCount;
+
+		if (meeting < 0 || best > maxDistance) {
+			if (trace != null) {
+				trace.record(SearchTrace.FINISH, target, -1);
+			}
+			return false;
+		}
+		if (trace != null) {
+			trace.record(SearchTrace.FINISH, target, best);
+		}
+
+		// the forward half ends at the meeting tile, the backward half leads on to the target
+		buildPath(forward.parent, start, meeting, path);
+		for (int tile = backward.parent[meeting]; tile >= 0; tile = backward.parent[tile]) {
+			path.appendStep(tile % width, tile / width);
+		}
+		return true;
+	}
+
+	/**
+	 * Get the potential of a tile, half the estimate to the target less half
+	 * the estimate from the start. The forward search is ordered by the cost
+	 * plus the potential and the backward one by the cost less it, so both
+	 * see the same step costs adjusted by the same amounts and the searches
+	 * can stop as soon as the two lowest keys add up to the best route.
+	 *
+	 * @param heuristic The heuristic of the search
+	 * @param mover The entity that will be moving along the path
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinate of the target location
+	 * @param ty The y coordinate of the target location
+	 * @return The potential of the tile
+	 */
+	private static float getPotential(AStarHeuristic heuristic, Mover mover, int x, int y, int sx, int sy, int tx, int ty) {
+		return (heuristic.getCost(mover, x, y, tx, ty) - heuristic.getCost(mover, sx, sy, x, y)) / 2;
+	}
+}
@@ -0,0 +1,122 @@
+package com.qylla.util.pathfinding;
+
+/**
+ * A monotone priority queue of tile indexes with small integer keys, also
+ * known as Dial's queue. There is one bucket per key value, used in a
+ * circle, so pushing and popping are constant time as long as no key is
+ * pushed more than the highest step cost past the last key popped. That is
+ * always the case in a search whose step costs are bounded by that cost.
+ *
+ * Keys are never decreased in place, a tile that improves is pushed again
+ * and the search skips the stale copies as they come out.
+ *
+ * @author Cesar Ramirez
+ */
+public class BucketQueue {
+	/** The tiles in each bucket */
+	private int[][] buckets;
+	/** The number of tiles in each bucket */
+	private int[] sizes;
+	/** The key of the bucket being emptied */
+	private int currentKey;
+	/** The position of the next tile to pop in the current bucket */
+	private int cursor;
+	/** The number of tiles pushed and not popped yet */
+	private int pending;
+	/** The highest number of tiles pending since the queue was last emptied */
+	private int peakSize;
+
+	/**
+	 * Create a queue
+	 *
+	 * @param maxStepCost The highest cost of a single step of the search
+	 */
+	public BucketQueue(int maxStepCost) {
+		buckets = new int[maxStepCost + 1][16];
+		sizes = new int[maxStepCost + 1];
+	}
+
+	/**
+	 * Empty the queue and start again from the key 0
+	 */
+	public void clear() {
+		for (int i=0;i<sizes.length;i++) {
+			sizes[i] = 0;
+		}
+		currentKey = 0;
+		cursor = 0;
+		pending = 0;
+		peakSize = 0;
+	}
+
+	/**
+	 * Check if the queue is empty
+	 *
+	 * @return True if there are no tiles left to pop
+	 */
+	public boolean isEmpty() {
+		return pending == 0;
+	}
+
+	/**
+	 * Get the highest number of tiles the queue held since it was last
+	 * emptied with {@link #clear()}, stale copies of improved tiles included
+	 *
+	 * @return The peak size of the queue
+	 */
+	public int getPeakSize() {
+		return peakSize;
+	}
+
+	/**
+	 * Add a tile to the queue
+	 *
+	 * @param index The tile index
+	 * @param key The key of the tile, between the current key and the
+	 * current key plus the highest step cost
+	 */
+	public void push(int index, int key) {
+		int bucket = key % buckets.length;
+		int size = sizes[bucket];
+		if (size == buckets[bucket].length) {
+			int[] grown = new int[size * 2];
+			System.arraycopy(buckets[bucket], 0, grown, 0, size);
+			buckets[bucket] = grown;
+		}
+		buckets[bucket][size] = index;
+		sizes[bucket] = size + 1;
+		pending++;
+		if (pending > peakSize) {
+			peakSize = pending;
+		}
+	}
+
+	/**
+	 * Remove one of the tiles with the lowest key from the queue. Its key
+	 * is then available from {@link #getCurrentKey()}.
+	 *
+	 * @return The tile index, or -1 if the queue is empty
+	 */
+	public int pop() {
+		while (pending > 0) {
+			int bucket = currentKey % buckets.length;
+			if (cursor < sizes[bucket]) {
+				pending--;
+				return buckets[bucket][cursor++];
+			}
+			sizes[bucket] = 0;
+			cursor = 0;
+			currentKey++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the key of the last tile popped
+	 *
+	 * @return The key of the bucket being emptied
+	 */
+	public int getCurrentKey() {
+		return currentKey;
+	}
+}
@@ -0,0 +1,242 @@
+package com.qylla.util.pathfinding;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.PathFinder;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+import com.qylla.util.pathfinding.interfaces.VersionedMap;
+
+/**
+ * A path finder that remembers the answers of another one. The same path
+ * is often asked for many times in a row, while the player hovers over a
+ * tile, previews a move and confirms it, or while the AI weighs its
+ * options, and only the first of those queries has to search.
+ *
+ * Answers are keyed by the movement type of the mover, the start, the
+ * target and the movement budget. The wrapped finder is created for one
+ * setting of diagonal movement, so that is part of the key implicitly.
+ * Once the cache is full the answer used least recently is dropped. All
+ * answers are dropped when the version of a {@link VersionedMap} changes,
+ * or when {@link #invalidate()} is called for maps without a version.
+ *
+ * The cache can be shared by several threads as long as the wrapped finder
+ * can. Searches run outside of the lock.
+ *
+ * @author Cesar Ramirez
+ */
+public class CachingPathFinder implements PathFinder {
+	/** The finder answering the queries that are not cached */
+	private PathFinder finder;
+	/** The map if it keeps a version, null if not */
+	private VersionedMap versionedMap;
+	/** The version of the map the cached answers were found on */
+	private int version;
+	/** The number of times the cache was emptied */
+	private int generation;
+	/** The cached answers, least recently used first. Paths that don't exist are kept as null */
+	private LinkedHashMap<Query, Path> cache;
+	/** The number of queries answered from the cache */
+	private int hitCount;
+	/** The number of queries that had to search */
+	private int missCount;
+	/** The number of answers dropped to make room for others */
+	private int evictionCount;
+
+	/**
+	 * The parameters of a query, used as the key of the cache
+	 *
+	 * @author Cesar Ramirez
+	 */
+	private static class Query {
+		/** The movement type of the mover, -1 if there is no mover */
+		private int movementType;
+		/** The max distance the mover will move */
+		private int maxDistance;
+		/** The x coordinate of the start location */
+		private int sx;
+		/** The y coordinate of the start location */
+		private int sy;
+		/** The x coordinate of the target location */
+		private int tx;
+		/** The y coordinate of the target location */
+		private int ty;
+
+		/**
+		 * Create a query
+		 *
+		 * @param mover The entity that will be moving along the path
+		 * @param maxDistance The max distance the mover will move
+		 * @param sx The x coordinate of the start location
+		 * @param sy The y coordinate of the start location
+		 * @param tx The x coordinate of the target location
+		 * @param ty The y coordinate of the target location
+		 */
+		private Query(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {
+			this.movementType = (mover == null) ? -1 : mover.getMovementType();
+			this.maxDistance = maxDistance;
+			this.sx = sx;
+			this.sy = sy;
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		/**
+		 * @see Object#hashCode()
+		 */
+		public int hashCode() {
+			int hash = movementType;
+			hash = hash * 31 + maxDistance;
+			hash = hash * 31 + ((sx << 16) | sy);
+			hash = hash * 31 + ((tx << 16) | ty);
+			return hash;
+		}
+
+		/**
+		 * @see Object#equals(Object)
+		 */
+		public boolean equals(Object other) {
+			if (!(other instanceof Query)) {
+				return false;
+			}
+			Query o = (Query) other;
+			return (o.movementType == movementType) && (o.maxDistance == maxDistance)
+					&& (o.sx == sx) && (o.sy == sy) && (o.tx == tx) && (o.ty == ty);
+		}
+	}
+
+	/**
+	 * Create a caching path finder
+	 *
+	 * @param finder The finder answering the queries that are not cached
+	 * @param map The map searched by the finder, if it is a {@link VersionedMap}
+	 * the cache is emptied whenever its version changes
+	 * @param capacity The highest number of answers to keep
+	 */
+	public CachingPathFinder(PathFinder finder, TileBasedMap map, final int capacity) {
+		this.finder = finder;
+		this.versionedMap = (map instanceof VersionedMap) ? (VersionedMap) map : null;
+		if (versionedMap != null) {
+			version = versionedMap.getMapVersion();
+		}
+		// in access order, so the eldest entry is the least recently used
+		cache = new LinkedHashMap<Query, Path>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Query, Path> eldest) {
+				if (size() > capacity) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int)
+	 */
+	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {
+		Path path = new Path();
+		if (!findPath(mover, maxDistance, sx, sy, tx, ty, path)) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * The path is copied out of the cache, so callers may change it freely.
+	 *
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		Query query = new Query(mover, maxDistance, sx, sy, tx, ty);
+		int searchGeneration;
+		synchronized (this) {
+			checkVersion();
+			if (cache.containsKey(query)) {
+				hitCount++;
+				Path cached = cache.get(query);
+				if (cached == null) {
+					return false;
+				}
+				path.set(cached);
+				return true;
+			}
+			missCount++;
+			searchGeneration = generation;
+		}
+
+		boolean found = finder.findPath(mover, maxDistance, sx, sy, tx, ty, path);
+		Path cached = null;
+		if (found) {
+			cached = new Path();
+			cached.set(path);
+		}
+		synchronized (this) {
+			// an answer found while the map changed belongs to neither version
+			checkVersion();
+			if (generation == searchGeneration) {
+				cache.put(query, cached);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Drop every answer if the map changed since they were found
+	 */
+	private void checkVersion() {
+		if (versionedMap != null && versionedMap.getMapVersion() != version) {
+			cache.clear();
+			generation++;
+			version = versionedMap.getMapVersion();
+		}
+	}
+
+	/**
+	 * Drop every answer, for maps without a version that changed
+	 */
+	public synchronized void invalidate() {
+		cache.clear();
+		generation++;
+	}
+
+	/**
+	 * Get the number of queries answered from the cache
+	 *
+	 * @return The number of cache hits
+	 */
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Get the number of queries that had to search
+	 *
+	 * @return The number of cache misses
+	 */
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Get the number of answers dropped to make room for others. Answers
+	 * dropped because the map changed are not counted.
+	 *
+	 * @return The number of evictions
+	 */
+	public synchronized int getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Get the number of answers in the cache
+	 *
+	 * @return The number of cached answers
+	 */
+	public synchronized int getSize() {
+		return cache.size();
+	}
+}
@@ -0,0 +1,155 @@
+package com.qylla.util.pathfinding;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.qylla.util.pathfinding.interfaces.Mover;
+
+/**
+ * Works out distance fields, the cost of reaching every tile of the map,
+ * for many sources at once. The AI uses them to weigh threats and
+ * influence: one field per enemy unit tells how far each unit can reach,
+ * and a single field from all of them tells which enemy is nearest to
+ * each tile.
+ *
+ * Single source fields are independent of each other, so they are split
+ * over the threads of a fork-join pool, one field per task. Every task
+ * takes its own search context from the finder, and the finder's map data
+ * is only read, so the fields come out the same as they would one after
+ * the other. Fields are plain int arrays indexed by y * width + x, holding
+ * {@link GridPathFinder#UNREACHABLE} for the tiles out of reach.
+ *
+ * @author Cesar Ramirez
+ */
+public class DistanceFields {
+	/** The finder holding the map data */
+	private GridPathFinder finder;
+	/** The pool the fields are worked out on */
+	private ForkJoinPool pool;
+
+	/**
+	 * A task working out the fields of a run of sources, split in halves
+	 * until each task has a single source left
+	 *
+	 * @author Cesar Ramirez
+	 */
+	private class FieldTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** The entity that will be moving */
+		private Mover mover;
+		/** The max distance the mover will move */
+		private int maxDistance;
+		/** The x coordinates of all the sources */
+		private int[] sx;
+		/** The y coordinates of all the sources */
+		private int[] sy;
+		/** The fields of all the sources */
+		private int[][] fields;
+		/** The first source of this task */
+		private int from;
+		/** The source after the last one of this task */
+		private int to;
+
+		/**
+		 * Create a task
+		 *
+		 * @param mover The entity that will be moving
+		 * @param maxDistance The max distance the mover will move
+		 * @param sx The x coordinates of all the sources
+		 * @param sy The y coordinates of all the sources
+		 * @param fields The fields of all the sources
+		 * @param from The first source of this task
+		 * @param to The source after the last one of this task
+		 */
+		private FieldTask(Mover mover, int maxDistance, int[] sx, int[] sy, int[][] fields, int from, int to) {
+			this.mover = mover;
+			this.maxDistance = maxDistance;
+			this.sx = sx;
+			this.sy = sy;
+			this.fields = fields;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * @see RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new FieldTask(mover, maxDistance, sx, sy, fields, from, middle),
+						new FieldTask(mover, maxDistance, sx, sy, fields, middle, to));
+				return;
+			}
+
+			SearchContext context = finder.acquireContext();
+			try {
+				finder.findDistances(context, mover, maxDistance, new int[] {sx[from]}, new int[] {sy[from]}, fields[from], null);
+			} finally {
+				finder.releaseContext(context);
+			}
+		}
+	}
+
+	/**
+	 * Create a distance field calculator
+	 *
+	 * @param finder The finder holding the map data, costs and movement layers
+	 * @param pool The pool to work out the fields on
+	 */
+	public DistanceFields(GridPathFinder finder, ForkJoinPool pool) {
+		this.finder = finder;
+		this.pool = pool;
+	}
+
+	/**
+	 * Work out the field of every source in parallel
+	 *
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinates of the sources
+	 * @param sy The y coordinates of the sources
+	 * @return One field per source
+	 */
+	public int[][] findFields(Mover mover, int maxDistance, int[] sx, int[] sy) {
+		int[][] fields = new int[sx.length][finder.width * finder.height];
+		findFields(mover, maxDistance, sx, sy, fields);
+		return fields;
+	}
+
+	/**
+	 * Work out the field of every source in parallel, writing them into
+	 * fields supplied by the caller. Returns once every field is done.
+	 *
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinates of the sources
+	 * @param sy The y coordinates of the sources
+	 * @param fields The fields to overwrite, one per source, each the size of the map
+	 */
+	public void findFields(Mover mover, int maxDistance, int[] sx, int[] sy, int[][] fields) {
+		if (sx.length == 0) {
+			return;
+		}
+		// build the movement layer once rather than racing for it in every task
+		finder.getLayer(mover);
+		pool.invoke(new FieldTask(mover, maxDistance, sx, sy, fields, 0, sx.length));
+	}
+
+	/**
+	 * Work out the field of the nearest source to each tile. This is a single
+	 * search from all the sources at once and runs on the calling thread.
+	 *
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinates of the sources
+	 * @param sy The y coordinates of the sources
+	 * @param field The field to overwrite with the cost from the nearest source
+	 * @param nearest The array to overwrite with the index of the nearest
+	 * source of each tile, or null if it is not needed
+	 */
+	public void findNearest(Mover mover, int maxDistance, int[] sx, int[] sy, int[] field, int[] nearest) {
+		finder.findDistances(mover, maxDistance, sx, sy, field, nearest);
+	}
+}
@@ -0,0 +1,962 @@
+package com.qylla.util.pathfinding;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.qylla.util.pathfinding.heuristics.ManhattanHeuristic;
+import com.qylla.util.pathfinding.heuristics.OctileHeuristic;
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.MultiTargetPathFinder;
+import com.qylla.util.pathfinding.interfaces.PathFinder;
+import com.qylla.util.pathfinding.interfaces.SearchListener;
+import com.qylla.util.pathfinding.interfaces.TerrainMap;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+import com.qylla.util.pathfinding.interfaces.VersionedMap;
+
+/**
+ * A path finder implementation of the AStar algorithm that keeps all of its
+ * search data in flat primitive arrays instead of a grid of node objects.
+ * Every tile is identified by its index, y * width + x, and the tile costs,
+ * search depths, scores, parents and list flags all live in arrays indexed
+ * by it. Once the finder is created a search allocates nothing but the
+ * returned path.
+ *
+ * The finder itself only holds the map data, the working state of a search
+ * lives in a {@link SearchContext}. Contexts are kept in a small lock free
+ * pool and handed to one search at a time, so a single finder can serve searches from many
+ * threads at once without locking, provided the map answers isBlocked from
+ * several threads safely. Callers that manage their own threads can also
+ * create a context once and pass it to every search they run.
+ *
+ * Searches never ask the map about single tiles. The cost and blocking of
+ * every tile are read once per movement type, see
+ * {@link Mover#getMovementType()}, into a movement layer that the search
+ * reads directly. Layers are built again when the version of a
+ * {@link VersionedMap} changes. Maps without a version are taken not to
+ * change, except for the tiles passed to {@link #updateTile(int, int)}.
+ * The default heuristic is scaled by the cheapest tile of the movement layer
+ * of the mover searching, so it stays admissible for movement types paying
+ * less than the terrain, like planes flying over it.
+ *
+ * @author Cesar Ramirez
+ */
+public class GridPathFinder implements MultiTargetPathFinder {
+	/** The x offsets of the neighbours of a tile, the diagonals come last */
+	protected static final int[] DX = {1, 0, -1, 0, 1, -1, -1, 1};
+	/** The y offsets of the neighbours of a tile, the diagonals come last */
+	protected static final int[] DY = {0, 1, 0, -1, 1, 1, -1, -1};
+	/** The cost of a tile in a movement layer that can't be entered */
+	public static final int BLOCKED = -1;
+	/** The distance of the tiles a distance search could not reach */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/** The map being searched */
+	protected TileBasedMap map;
+	/** The width of the map in tiles */
+	protected int width;
+	/** The height of the map in tiles */
+	protected int height;
+	/** True if we allow diaganol movement */
+	protected boolean allowDiagMovement;
+	/** The heuristic used to determine which tile to search first */
+	protected volatile AStarHeuristic heuristic;
+	/** The default heuristic, scaled by the movement layer of each mover */
+	protected AStarHeuristic layerHeuristic = new LayerHeuristic();
+	/** The cost of moving into each tile */
+	protected int[] cost;
+	/** The cost of the most expensive tile */
+	protected int maximumCost;
+	/** The search contexts not in use by any search, empty slots are null */
+	private AtomicReferenceArray<SearchContext> contexts =
+		new AtomicReferenceArray<SearchContext>(2 * Runtime.getRuntime().availableProcessors());
+	/** The number of tiles expanded by the last search to finish */
+	protected volatile int expandedCount;
+	/** The map if it keeps a version, null if not */
+	private VersionedMap versionedMap;
+	/** The movement layers built so far, indexed by {@link #getLayerIndex(Mover)} */
+	private volatile MovementLayer[] layers = new MovementLayer[1];
+	/** The listener told about every search, null if nobody is listening */
+	private volatile SearchListener listener;
+	/** The number of times a movement layer was changed or read again since the finder was created */
+	private volatile int layerRevision;
+
+	/**
+	 * The cost of every tile for one movement type
+	 *
+	 * @author Cesar Ramirez
+	 */
+	private static class MovementLayer {
+		/** The cost of moving into each tile, BLOCKED for the tiles that can't be entered */
+		private int[] cost;
+		/** The version of the map the layer was read from */
+		private int version;
+		/** The mover the layer was read for, standing for every mover of its type */
+		private Mover mover;
+		/** The cost of the cheapest tile that can be entered */
+		private int minimumCost;
+		/** The default heuristic scaled by the cheapest tile of the layer */
+		private AStarHeuristic heuristic;
+	}
+
+	/**
+	 * The default heuristic, the Manhattan distance, or the octile distance
+	 * if diagonal movement is allowed, scaled by the cheapest tile of the
+	 * movement layer of the mover
+	 *
+	 * @author Cesar Ramirez
+	 */
+	private class LayerHeuristic implements AStarHeuristic {
+		/**
+		 * @see AStarHeuristic#getCost(Mover, int, int, int, int)
+		 */
+		public float getCost(Mover mover, int x, int y, int tx, int ty) {
+			return getLayerHeuristic(mover).getCost(mover, x, y, tx, ty);
+		}
+	}
+
+	/**
+	 * Create a path finder that uses the Manhattan distance, or the octile
+	 * distance if diagonal movement is allowed, scaled by the cost of the
+	 * cheapest tile the mover can enter as its heuristic
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 */
+	public GridPathFinder(TileBasedMap map, boolean allowDiagMovement) {
+		this.map = map;
+		this.allowDiagMovement = allowDiagMovement;
+		this.width = map.getWidthInTiles();
+		this.height = map.getHeightInTiles();
+		this.versionedMap = (map instanceof VersionedMap) ? (VersionedMap) map : null;
+
+		cost = new int[width * height];
+
+		int[][] terrain = (map instanceof TerrainMap) ? ((TerrainMap) map).getTerrain() : null;
+		for (int y=0;y<height;y++) {
+			for (int x=0;x<width;x++) {
+				// terrain costs do not depend on the mover, as in AStarPathFinder
+				int index = y * width + x;
+				cost[index] = (terrain != null) ? terrain[x][y] : (int) map.getCost(null, x, y);
+				maximumCost = Math.max(maximumCost, cost[index]);
+			}
+		}
+		heuristic = layerHeuristic;
+	}
+
+	/**
+	 * Create a path finder
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 * @param heuristic The heuristic used to determine the search order of the map, it
+	 * must never overestimate the cost of reaching the target for the paths to be optimal
+	 */
+	public GridPathFinder(TileBasedMap map, boolean allowDiagMovement, AStarHeuristic heuristic) {
+		this(map, allowDiagMovement);
+		this.heuristic = heuristic;
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int)
+	 */
+	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {
+		Path path = new Path();
+		if (!findPath(mover, maxDistance, sx, sy, tx, ty, path)) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		SearchContext context = acquireContext();
+		try {
+			SearchListener listener = this.listener;
+			if (listener == null) {
+				return findPath(context, mover, maxDistance, sx, sy, tx, ty, path);
+			}
+			long startTime = System.nanoTime();
+			boolean found = findPath(context, mover, maxDistance, sx, sy, tx, ty, path);
+			listener.searchFinished(mover, context, System.nanoTime() - startTime, found);
+			return found;
+		} finally {
+			releaseContext(context);
+		}
+	}
+
+	/**
+	 * Find a path using the given search context
+	 *
+	 * @param context The context holding the working state of the search, not
+	 * in use by any other search
+	 * @param mover The entity that will be moving along the path
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinate of the target location
+	 * @param ty The y coordinate of the target location
+	 * @param path The path to overwrite with the steps found
+	 * @return True if a path was found
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(SearchContext context, Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		context.startSearch();
+		int[] layer = getLayer(mover);
+		// pruning by the budget needs an estimate that never overestimates for this mover
+		// read once, the heuristic may be changed while the search runs
+		AStarHeuristic heuristic = this.heuristic;
+		AStarHeuristic bound = (heuristic == layerHeuristic) ? null : getLayerHeuristic(mover);
+		SearchTrace trace = context.trace;
+		int start = sy * width + sx;
+		int target = ty * width + tx;
+		if (trace != null) {
+			trace.record(SearchTrace.START, start, target);
+		}
+		// easy first check, if the destination is blocked, we can't get there
+		if (!isValidLocation(layer, tx, ty)) {
+			if (trace != null) {
+				trace.record(SearchTrace.FINISH, target, -1);
+			}
+			return false;
+		}
+
+		int[] depth = context.depth;
+
+		context.touch(start);
+		depth[start] = 0;
+		context.addToOpen(start, heuristic.getCost(mover, sx, sy, tx, ty));
+		context.touch(target);
+
+		int directions = allowDiagMovement ? 8 : 4;
+		while (!context.open.isEmpty()) {
+			int current = context.open.pop();
+			if (current == target) {
+				break;
+			}
+			context.state[current] = SearchContext.CLOSED;
+			context.expandedCount++;
+			if (trace != null) {
+				trace.record(SearchTrace.EXPAND, current, depth[current]);
+			}
+
+			int cx = current % width;
+			int cy = current / width;
+			for (int i=0;i<directions;i++) {
+				int nx = cx + DX[i];
+				int ny = cy + DY[i];
+				if (!isValidLocation(layer, nx, ny)) {
+					continue;
+				}
+				// a diagonal step may not cut the corner of a blocked tile
+				if (i >= 4 && (!isValidLocation(layer, nx, cy) || !isValidLocation(layer, cx, ny))) {
+					continue;
+				}
+
+				int neighbour = ny * width + nx;
+				context.touch(neighbour);
+				context.neighbourCount++;
+				int nextStepCost = depth[current] + layer[neighbour];
+				if (nextStepCost > maxDistance || nextStepCost >= depth[neighbour]) {
+					continue;
+				}
+				// nor is a tile whose cheapest way on to the target is over the budget
+				float estimate = heuristic.getCost(mover, nx, ny, tx, ty);
+				float lowest = (bound == null) ? estimate : bound.getCost(mover, nx, ny, tx, ty);
+				if (nextStepCost + lowest > maxDistance) {
+					continue;
+				}
+				// a better route to a closed tile opens it again
+				if (context.state[neighbour] == SearchContext.CLOSED) {
+					context.reopenedCount++;
+				}
+				if (trace != null) {
+					trace.record((depth[neighbour] == Integer.MAX_VALUE) ? SearchTrace.PUSH : SearchTrace.RELAX, neighbour, nextStepCost);
+				}
+				depth[neighbour] = nextStepCost;
+				context.parent[neighbour] = current;
+				context.addToOpen(neighbour, estimate);
+			}
+		}
+		expandedCount = context.expandedCount;
+
+		if (trace != null) {
+			trace.record(SearchTrace.FINISH, target, (depth[target] == Integer.MAX_VALUE) ? -1 : depth[target]);
+		}
+
+		// since we've got an empty open list or we've run out of search
+		// there was no path.
+		if (depth[target] == Integer.MAX_VALUE) {
+			return false;
+		}
+
+		buildPath(context.parent, start, target, path);
+		return true;
+	}
+
+	/**
+	 * @see MultiTargetPathFinder#findPaths(Mover, int, int, int, int[], int[])
+	 */
+	public Path[] findPaths(Mover mover, int maxDistance, int sx, int sy, int[] tx, int[] ty) {
+		Path[] paths = new Path[tx.length];
+		for (int i=0;i<paths.length;i++) {
+			paths[i] = new Path();
+		}
+		findPaths(mover, maxDistance, sx, sy, tx, ty, paths);
+		for (int i=0;i<paths.length;i++) {
+			if (paths[i].getLength() == 0) {
+				paths[i] = null;
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * @see MultiTargetPathFinder#findPaths(Mover, int, int, int, int[], int[], Path[])
+	 */
+	public int findPaths(Mover mover, int maxDistance, int sx, int sy, int[] tx, int[] ty, Path[] paths) {
+		SearchContext context = acquireContext();
+		try {
+			SearchListener listener = this.listener;
+			if (listener == null) {
+				return findPaths(context, mover, maxDistance, sx, sy, tx, ty, paths);
+			}
+			long startTime = System.nanoTime();
+			int found = findPaths(context, mover, maxDistance, sx, sy, tx, ty, paths);
+			listener.searchFinished(mover, context, System.nanoTime() - startTime, found > 0);
+			return found;
+		} finally {
+			releaseContext(context);
+		}
+	}
+
+	/**
+	 * Find the paths to many targets using the given search context. This
+	 * is a single Dijkstra search from the start over a bucket queue that
+	 * stops as soon as every target has been settled or the movement budget
+	 * is exhausted, so its cost doesn't grow with the number of targets.
+	 *
+	 * @param context The context holding the working state of the search, not
+	 * in use by any other search
+	 * @param mover The entity that will be moving along the paths
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinates of the target locations
+	 * @param ty The y coordinates of the target locations
+	 * @param paths The paths to overwrite, one per target
+	 * @return The number of targets that can be reached
+	 * @see MultiTargetPathFinder#findPaths(Mover, int, int, int, int[], int[], Path[])
+	 */
+	public int findPaths(SearchContext context, Mover mover, int maxDistance, int sx, int sy, int[] tx, int[] ty, Path[] paths) {
+		context.startSearch();
+
+		int[] layer = getLayer(mover);
+		context.ensureMaxStepCost(maximumCost);
+		SearchTrace trace = context.trace;
+		int[] depth = context.depth;
+		byte[] state = context.state;
+		BucketQueue buckets = context.buckets;
+
+		// flag every distinct target that could be reached at all
+		int remaining = 0;
+		for (int i=0;i<tx.length;i++) {
+			paths[i].clear();
+			if (isValidLocation(layer, tx[i], ty[i])) {
+				int target = ty[i] * width + tx[i];
+				context.touch(target);
+				if ((state[target] & SearchContext.TARGET) == 0) {
+					state[target] |= SearchContext.TARGET;
+					remaining++;
+				}
+			}
+		}
+
+		int start = sy * width + sx;
+		context.touch(start);
+		depth[start] = 0;
+		buckets.push(start, 0);
+		if (trace != null) {
+			trace.record(SearchTrace.START, start, -1);
+		}
+
+		int directions = allowDiagMovement ? 8 : 4;
+		for (int current = buckets.pop(); current >= 0 && remaining > 0; current = buckets.pop()) {
+			// skip the copies left behind by tiles that were reached again for less
+			if ((state[current] & SearchContext.CLOSED) != 0 || depth[current] != buckets.getCurrentKey()) {
+				continue;
+			}
+			if ((state[current] & SearchContext.TARGET) != 0) {
+				remaining--;
+			}
+			state[current] |= SearchContext.CLOSED;
+			context.expandedCount++;
+			if (trace != null) {
+				trace.record(SearchTrace.EXPAND, current, depth[current]);
+			}
+
+			int cx = current % width;
+			int cy = current / width;
+			for (int i=0;i<directions;i++) {
+				int nx = cx + DX[i];
+				int ny = cy + DY[i];
+				if (!isValidLocation(layer, nx, ny)) {
+					continue;
+				}
+				if (i >= 4 && (!isValidLocation(layer, nx, cy) || !isValidLocation(layer, cx, ny))) {
+					continue;
+				}
+
+				int neighbour = ny * width + nx;
+				context.touch(neighbour);
+				context.neighbourCount++;
+				int nextStepCost = depth[current] + layer[neighbour];
+				if (nextStepCost > maxDistance || nextStepCost >= depth[neighbour]) {
+					continue;
+				}
+				if (trace != null) {
+					trace.record((depth[neighbour] == Integer.MAX_VALUE) ? SearchTrace.PUSH : SearchTrace.RELAX, neighbour, nextStepCost);
+				}
+				depth[neighbour] = nextStepCost;
+				context.parent[neighbour] = current;
+				buckets.push(neighbour, nextStepCost);
+			}
+		}
+		expandedCount = context.expandedCount;
+		if (trace != null) {
+			trace.record(SearchTrace.FINISH, start, context.expandedCount);
+		}
+
+		int found = 0;
+		for (int i=0;i<tx.length;i++) {
+			int target = ty[i] * width + tx[i];
+			if (isValidLocation(layer, tx[i], ty[i]) && (state[target] & SearchContext.CLOSED) != 0
+					&& context.generation[target] == context.searchGeneration) {
+				buildPath(context.parent, start, target, paths[i]);
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Find all the tiles that can be reached with the current parameters, mover(unit),
+	 * max distance and location.
+	 *
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @return The tiles that can be reached, including the start at cost 0
+	 */
+	public MovementRange findRange(Mover mover, int maxDistance, int sx, int sy) {
+		MovementRange range = new MovementRange(width, height);
+		findRange(mover, maxDistance, sx, sy, range);
+		return range;
+	}
+
+	/**
+	 * Find all the tiles that can be reached with the current parameters,
+	 * writing them into a range supplied by the caller. This is a Dijkstra
+	 * search bounded by the movement budget, and since tile costs are small
+	 * integers the open list is a bucket queue with constant time operations.
+	 *
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param range The range to overwrite with the tiles that can be reached,
+	 * including the start at cost 0, cheapest first. The range records how each
+	 * tile was reached, so paths to them can be read from it without searching.
+	 */
+	public void findRange(Mover mover, int maxDistance, int sx, int sy, MovementRange range) {
+		SearchContext context = acquireContext();
+		try {
+			SearchListener listener = this.listener;
+			if (listener == null) {
+				findRange(context, mover, maxDistance, sx, sy, range);
+				return;
+			}
+			long startTime = System.nanoTime();
+			findRange(context, mover, maxDistance, sx, sy, range);
+			listener.searchFinished(mover, context, System.nanoTime() - startTime, true);
+		} finally {
+			releaseContext(context);
+		}
+	}
+
+	/**
+	 * Find all the tiles that can be reached using the given search context
+	 *
+	 * @param context The context holding the working state of the search, not
+	 * in use by any other search
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param range The range to overwrite with the tiles that can be reached
+	 * @see #findRange(Mover, int, int, int, MovementRange)
+	 */
+	public void findRange(SearchContext context, Mover mover, int maxDistance, int sx, int sy, MovementRange range) {
+		range.clear();
+		context.startSearch();
+
+		int[] layer = getLayer(mover);
+		context.ensureMaxStepCost(maximumCost);
+		SearchTrace trace = context.trace;
+		int[] depth = context.depth;
+		byte[] state = context.state;
+		BucketQueue buckets = context.buckets;
+		int start = sy * width + sx;
+		context.touch(start);
+		depth[start] = 0;
+		buckets.push(start, 0);
+		if (trace != null) {
+			trace.record(SearchTrace.START, start, -1);
+		}
+		range.setStart(sx, sy);
+
+		int directions = allowDiagMovement ? 8 : 4;
+		for (int current = buckets.pop(); current >= 0; current = buckets.pop()) {
+			// skip the copies left behind by tiles that were reached again for less
+			if (state[current] == SearchContext.CLOSED || depth[current] != buckets.getCurrentKey()) {
+				continue;
+			}
+			state[current] = SearchContext.CLOSED;
+			context.expandedCount++;
+			if (trace != null) {
+				trace.record(SearchTrace.EXPAND, current, depth[current]);
+			}
+
+			int cx = current % width;
+			int cy = current / width;
+			range.add(cx, cy, depth[current], context.parent[current]);
+			for (int i=0;i<directions;i++) {
+				int nx = cx + DX[i];
+				int ny = cy + DY[i];
+				if (!isValidLocation(layer, nx, ny)) {
+					continue;
+				}
+				if (i >= 4 && (!isValidLocation(layer, nx, cy) || !isValidLocation(layer, cx, ny))) {
+					continue;
+				}
+
+				int neighbour = ny * width + nx;
+				context.touch(neighbour);
+				context.neighbourCount++;
+				int nextStepCost = depth[current] + layer[neighbour];
+				if (nextStepCost > maxDistance || nextStepCost >= depth[neighbour]) {
+					continue;
+				}
+				if (trace != null) {
+					trace.record((depth[neighbour] == Integer.MAX_VALUE) ? SearchTrace.PUSH : SearchTrace.RELAX, neighbour, nextStepCost);
+				}
+				depth[neighbour] = nextStepCost;
+				context.parent[neighbour] = current;
+				buckets.push(neighbour, nextStepCost);
+			}
+		}
+		expandedCount = context.expandedCount;
+		if (trace != null) {
+			trace.record(SearchTrace.FINISH, start, context.expandedCount);
+		}
+	}
+
+	/**
+	 * Find the cost of reaching every tile from the nearest of a set of
+	 * sources, writing them into arrays supplied by the caller.
+	 *
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinates of the sources
+	 * @param sy The y coordinates of the sources
+	 * @param distance The array to overwrite with the cost of each tile,
+	 * indexed by y * width + x, {@link #UNREACHABLE} for the tiles out of reach
+	 * @param nearest The array to overwrite with the index of the nearest source
+	 * of each tile, or null if it is not needed. Tiles out of reach are left as
+	 * they were.
+	 */
+	public void findDistances(Mover mover, int maxDistance, int[] sx, int[] sy, int[] distance, int[] nearest) {
+		SearchContext context = acquireContext();
+		try {
+			findDistances(context, mover, maxDistance, sx, sy, distance, nearest);
+		} finally {
+			releaseContext(context);
+		}
+	}
+
+	/**
+	 * Find the cost of reaching every tile from the nearest of a set of
+	 * sources using the given search context. Every source is put in the
+	 * open list at cost 0 and a single Dijkstra search spreads out from all
+	 * of them at once, so the cost doesn't grow with the number of sources.
+	 * The costs are kept in the output array itself rather than in the
+	 * context.
+	 *
+	 * @param context The context holding the open list of the search, not
+	 * in use by any other search
+	 * @param mover The entity that will be moving
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinates of the sources
+	 * @param sy The y coordinates of the sources
+	 * @param distance The array to overwrite with the cost of each tile
+	 * @param nearest The array to overwrite with the nearest source of each tile, or null
+	 * @see #findDistances(Mover, int, int[], int[], int[], int[])
+	 */
+	public void findDistances(SearchContext context, Mover mover, int maxDistance, int[] sx, int[] sy, int[] distance, int[] nearest) {
+		context.startSearch();
+
+		int[] layer = getLayer(mover);
+		context.ensureMaxStepCost(maximumCost);
+		BucketQueue buckets = context.buckets;
+		for (int i=0;i<distance.length;i++) {
+			distance[i] = UNREACHABLE;
+		}
+		for (int i=0;i<sx.length;i++) {
+			if ((sx[i] < 0) || (sy[i] < 0) || (sx[i] >= width) || (sy[i] >= height)) {
+				continue;
+			}
+			int source = sy[i] * width + sx[i];
+			if (distance[source] != 0) {
+				distance[source] = 0;
+				if (nearest != null) {
+					nearest[source] = i;
+				}
+				buckets.push(source, 0);
+			}
+		}
+
+		int directions = allowDiagMovement ? 8 : 4;
+		for (int current = buckets.pop(); current >= 0; current = buckets.pop()) {
+			// a tile is only pushed again for strictly less, so the copy
+			// carrying its final cost comes out exactly once
+			if (distance[current] != buckets.getCurrentKey()) {
+				continue;
+			}
+			context.expandedCount++;
+
+			int cx = current % width;
+			int cy = current / width;
+			for (int i=0;i<directions;i++) {
+				int nx = cx + DX[i];
+				int ny = cy + DY[i];
+				if (!isValidLocation(layer, nx, ny)) {
+					continue;
+				}
+				if (i >= 4 && (!isValidLocation(layer, nx, cy) || !isValidLocation(layer, cx, ny))) {
+					continue;
+				}
+
+				int neighbour = ny * width + nx;
+				context.neighbourCount++;
+				int nextStepCost = distance[current] + layer[neighbour];
+				if (nextStepCost > maxDistance || nextStepCost >= distance[neighbour]) {
+					continue;
+				}
+				distance[neighbour] = nextStepCost;
+				if (nearest != null) {
+					nearest[neighbour] = nearest[current];
+				}
+				buckets.push(neighbour, nextStepCost);
+			}
+		}
+		expandedCount = context.expandedCount;
+	}
+
+	/**
+	 * Fill a path by walking the parent indexes back from the target to the
+	 * start. The steps are counted first so the path is filled from the back
+	 * without moving any of them.
+	 *
+	 * @param parent The parent index of each tile
+	 * @param start The index of the start tile
+	 * @param target The index of the target tile
+	 * @param path The path to fill
+	 */
+	protected void buildPath(int[] parent, int start, int target, Path path) {
+		int length = 1;
+		for (int tile = target; tile != start; tile = parent[tile]) {
+			length++;
+		}
+		path.setLength(length);
+		for (int tile = target; length > 0; tile = parent[tile]) {
+			length--;
+			path.setStep(length, tile % width, tile / width);
+		}
+	}
+
+	/**
+	 * Get the cost of moving into a tile as seen by the search
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @return The cost of moving into the tile
+	 */
+	public int getCost(int x, int y) {
+		return cost[y * width + x];
+	}
+
+	/**
+	 * Read the cost and blocking of a tile from the map again after they
+	 * changed, for every movement type. The default heuristic follows a
+	 * tile getting cheaper than the cheapest one so far, a heuristic given
+	 * to the finder has to be changed by the caller. Must not be called while
+	 * a search is running.
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 */
+	public void updateTile(int x, int y) {
+		int index = y * width + x;
+		int[][] terrain = (map instanceof TerrainMap) ? ((TerrainMap) map).getTerrain() : null;
+		cost[index] = (terrain != null) ? terrain[x][y] : (int) map.getCost(null, x, y);
+		maximumCost = Math.max(maximumCost, cost[index]);
+
+		MovementLayer[] current = layers;
+		for (int i=0;i<current.length;i++) {
+			if (current[i] != null) {
+				int tileCost = readCost(current[i].mover, x, y);
+				current[i].cost[index] = tileCost;
+				maximumCost = Math.max(maximumCost, tileCost);
+				if (tileCost != BLOCKED && tileCost < current[i].minimumCost) {
+					setMinimumCost(current[i], tileCost);
+				}
+			}
+		}
+		layerRevision++;
+	}
+
+	/**
+	 * Get the movement layer of a mover, reading it from the map if it was
+	 * not read yet or the map changed since
+	 *
+	 * @param mover The mover to get the layer of
+	 * @return The cost of moving into each tile for the mover, BLOCKED for
+	 * the tiles it can't enter
+	 */
+	protected int[] getLayer(Mover mover) {
+		int index = getLayerIndex(mover);
+		MovementLayer[] current = layers;
+		if (index < current.length) {
+			MovementLayer layer = current[index];
+			if (layer != null && (versionedMap == null || layer.version == versionedMap.getMapVersion())) {
+				return layer.cost;
+			}
+		}
+		return buildLayer(mover, index);
+	}
+
+	/**
+	 * Read the movement layer of a mover from the map
+	 *
+	 * @param mover The mover to read the layer for
+	 * @param index The index of the layer
+	 * @return The cost of moving into each tile for the mover
+	 */
+	private synchronized int[] buildLayer(Mover mover, int index) {
+		MovementLayer layer = new MovementLayer();
+		layer.mover = mover;
+		// read the version first, a change while reading is caught next time
+		layer.version = (versionedMap != null) ? versionedMap.getMapVersion() : 0;
+		layer.cost = new int[width * height];
+		int minimumCost = Integer.MAX_VALUE;
+		for (int y=0;y<height;y++) {
+			for (int x=0;x<width;x++) {
+				int tileCost = readCost(mover, x, y);
+				layer.cost[y * width + x] = tileCost;
+				maximumCost = Math.max(maximumCost, tileCost);
+				if (tileCost != BLOCKED) {
+					minimumCost = Math.min(minimumCost, tileCost);
+				}
+			}
+		}
+		// a map with every tile blocked can't be searched anyway
+		setMinimumCost(layer, (minimumCost == Integer.MAX_VALUE) ? 0 : Math.max(0, minimumCost));
+
+		MovementLayer[] grown = new MovementLayer[Math.max(layers.length, index + 1)];
+		System.arraycopy(layers, 0, grown, 0, layers.length);
+		if (grown[index] != null) {
+			// read again after the map changed, not just read for a new movement type
+			layerRevision++;
+		}
+		grown[index] = layer;
+		layers = grown;
+		return layer.cost;
+	}
+
+	/**
+	 * Get the default heuristic of the movement layer of a mover. It never
+	 * overestimates the cost for that mover, whatever heuristic the finder
+	 * was given, so the searches use it to leave out the tiles that can't be
+	 * part of a path within the movement budget.
+	 *
+	 * @param mover The mover to get the heuristic of
+	 * @return The Manhattan or octile distance scaled by the cheapest tile of the layer
+	 */
+	protected AStarHeuristic getLayerHeuristic(Mover mover) {
+		int index = getLayerIndex(mover);
+		MovementLayer[] current = layers;
+		if (index >= current.length || current[index] == null) {
+			// searches read the layer before asking for estimates, this is for other callers
+			getLayer(mover);
+			current = layers;
+		}
+		return current[index].heuristic;
+	}
+
+	/**
+	 * Set the cost of the cheapest tile of a movement layer and scale its
+	 * default heuristic by it
+	 *
+	 * @param layer The layer to change
+	 * @param minimumCost The cost of the cheapest tile that can be entered
+	 */
+	private void setMinimumCost(MovementLayer layer, int minimumCost) {
+		layer.minimumCost = minimumCost;
+		if (allowDiagMovement) {
+			// diagonal steps cost the same as straight ones
+			layer.heuristic = new OctileHeuristic(minimumCost, minimumCost);
+		} else {
+			layer.heuristic = new ManhattanHeuristic(minimumCost);
+		}
+	}
+
+	/**
+	 * Read the cost of a tile for a mover from the map
+	 *
+	 * @param mover The mover entering the tile
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @return The cost of moving into the tile, or BLOCKED if the mover can't
+	 */
+	private int readCost(Mover mover, int x, int y) {
+		if (map.isBlocked(mover, x, y)) {
+			return BLOCKED;
+		}
+		// the terrain is the same for everyone, only movers have their own costs
+		return (mover == null) ? cost[y * width + x] : (int) map.getCost(mover, x, y);
+	}
+
+	/**
+	 * Get the index of the movement layer of a mover
+	 *
+	 * @param mover The mover
+	 * @return 0 when there is no mover, the movement type plus one otherwise
+	 */
+	protected static int getLayerIndex(Mover mover) {
+		return (mover == null) ? 0 : mover.getMovementType() + 1;
+	}
+
+	/**
+	 * Get the number of tiles expanded by the last search. When searches run
+	 * on several threads this is the count of whichever finished last, use
+	 * {@link SearchContext#expandedCount} to get the count of a given search.
+	 *
+	 * @return The number of tiles taken out of the open list and expanded
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+
+	/**
+	 * Set the listener told about every search run through the methods that
+	 * take their context from the pool. Searches given a context by the
+	 * caller are not reported, the counters are in the context instead.
+	 *
+	 * @param listener The listener to notify, or null to stop measuring
+	 */
+	public void setSearchListener(SearchListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Get the number of times the movement layers changed, through
+	 * {@link #updateTile(int, int)} or by being read again after the version
+	 * of a {@link VersionedMap} changed. Anything worked out from a layer is
+	 * out of date once this changes.
+	 *
+	 * @return The revision of the movement layers
+	 */
+	public int getLayerRevision() {
+		return layerRevision;
+	}
+
+	/**
+	 * Set the heuristic used by the searches, e.g. one worked out from the
+	 * map once the finder is created. Searches started after the call use
+	 * the new heuristic on every thread.
+	 *
+	 * @param heuristic The heuristic used to determine the search order of the map, it
+	 * must never overestimate the cost of reaching the target for the paths to be optimal
+	 * @see LandmarkHeuristic
+	 */
+	public void setHeuristic(AStarHeuristic heuristic) {
+		this.heuristic = heuristic;
+	}
+
+	/**
+	 * Create a new search context sized for this finder's map
+	 *
+	 * @return A context that can be passed to the searches of this finder
+	 */
+	public SearchContext createContext() {
+		return new SearchContext(width * height, maximumCost);
+	}
+
+	/**
+	 * Take a search context from the pool, creating one if they are all in use
+	 *
+	 * @return A context for the exclusive use of the caller
+	 */
+	protected SearchContext acquireContext() {
+		for (int i=0;i<contexts.length();i++) {
+			SearchContext context = contexts.get(i);
+			if (context != null && contexts.compareAndSet(i, context, null)) {
+				return context;
+			}
+		}
+		return createContext();
+	}
+
+	/**
+	 * Return a search context to the pool once the search using it is done.
+	 * If the pool is full the context is left to the garbage collector.
+	 *
+	 * @param context The context to return
+	 */
+	protected void releaseContext(SearchContext context) {
+		for (int i=0;i<contexts.length();i++) {
+			if (contexts.get(i) == null && contexts.compareAndSet(i, null, context)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Check if a given location is valid for the supplied mover
+	 *
+	 * @param mover The mover that would hold a given location
+	 * @param x The x coordinate of the location to check
+	 * @param y The y coordinate of the location to check
+	 * @return True if the location is valid for the given mover
+	 */
+	protected boolean isValidLocation(Mover mover, int x, int y) {
+		return isValidLocation(getLayer(mover), x, y);
+	}
+
+	/**
+	 * Check if a given location can be entered according to a movement layer
+	 *
+	 * @param layer The movement layer of the mover
+	 * @param x The x coordinate of the location to check
+	 * @param y The y coordinate of the location to check
+	 * @return True if the location is on the map and not blocked
+	 */
+	protected boolean isValidLocation(int[] layer, int x, int y) {
+		if ((x < 0) || (y < 0) || (x >= width) || (y >= height)) {
+			return false;
+		}
+		return layer[y * width + x] != BLOCKED;
+	}
+}
@@ -0,0 +1,652 @@
+package com.qylla.util.pathfinding;
+
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.PathFinder;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+
+/**
+ * A path finder for long paths on big maps, in the style of HPA*. The map
+ * is cut into square clusters. Where two clusters touch, the open tiles
+ * along their shared border form entrances. The tiles on either side of
+ * each entrance become the nodes of a small abstract graph. Nodes of the
+ * same cluster are linked by the cost of the cheapest path between them
+ * inside the cluster, and the two nodes of an entrance by a single step.
+ *
+ * A search connects the start and target to the nodes of their clusters,
+ * searches the abstract graph, and then refines each hop of the abstract
+ * path into tiles with a GridPathFinder. Hops are short, so the searches
+ * stay small however far apart the start and target are. Paths are near
+ * optimal, not optimal, since they cross clusters only at the entrances.
+ * Starts and targets in the same or neighbouring clusters are searched
+ * directly, and so are those the abstract path fails for: when the mover
+ * can't follow it, or it costs the mover more than the movement budget
+ * and a cheaper path may still be within it.
+ *
+ * The graph is built from the terrain, as seen by no mover in particular.
+ * When the terrain of a tile changes call {@link #updateTile(int, int)},
+ * and only the clusters around it are rebuilt, on the next search.
+ *
+ * A finder keeps working state between searches and must only be used by
+ * one thread at a time.
+ *
+ * @author Cesar Ramirez
+ */
+public class HierarchicalPathFinder implements PathFinder {
+	/** The width and height of a cluster in tiles when none is given */
+	public static final int DEFAULT_CLUSTER_SIZE = 16;
+	/** Entrances at least this wide get a node pair at each end instead of one in the middle */
+	private static final int WIDE_ENTRANCE = 6;
+	/** The budget used for the searches refining the abstract path */
+	private static final int UNLIMITED = Integer.MAX_VALUE / 2;
+
+	/** The finder used to search inside clusters and refine paths */
+	private GridPathFinder finder;
+	/** The width of the map in tiles */
+	private int width;
+	/** The height of the map in tiles */
+	private int height;
+	/** The width and height of a cluster in tiles */
+	private int clusterSize;
+	/** The number of clusters across the map */
+	private int clustersX;
+	/** The number of clusters down the map */
+	private int clustersY;
+	/** The edges of each node as target, cost pairs, null for tiles that are not nodes */
+	private int[][] edges;
+	/** The number of edges of each node */
+	private int[] edgeCount;
+	/** The tile indexes of the nodes in each cluster */
+	private int[][] clusterNodes;
+	/** The number of nodes in each cluster */
+	private int[] clusterNodeCount;
+	/** True for the clusters that have to be rebuilt before the next search */
+	private boolean[] dirty;
+	/** True if any cluster has to be rebuilt */
+	private boolean anyDirty;
+	/** The layer revision of the finder the graph was built from */
+	private int layerRevision;
+	/** The movement layer the graph is built from, the one with no mover */
+	private int[] terrain;
+	/** The state of the abstract search */
+	private SearchContext abstractContext;
+	/** The state of the searches from the start and inside clusters */
+	private SearchContext startContext;
+	/** The state of the search from the target */
+	private SearchContext targetContext;
+	/** The tiles of the abstract path, from the start */
+	private int[] waypoints = new int[32];
+	/** The path found for one hop of the abstract path */
+	private Path segment = new Path();
+	/** The number of tiles expanded by the last search, over all its stages */
+	private int expandedCount;
+
+	/**
+	 * Create a path finder with clusters of the default size
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 */
+	public HierarchicalPathFinder(TileBasedMap map, boolean allowDiagMovement) {
+		this(new GridPathFinder(map, allowDiagMovement), DEFAULT_CLUSTER_SIZE);
+	}
+
+	/**
+	 * Create a path finder on top of a finder of the map
+	 *
+	 * @param finder The finder used to search inside clusters and refine paths
+	 * @param clusterSize The width and height of a cluster in tiles
+	 */
+	public HierarchicalPathFinder(GridPathFinder finder, int clusterSize) {
+		this.finder = finder;
+		this.width = finder.width;
+		this.height = finder.height;
+		this.clusterSize = clusterSize;
+		clustersX = (width + clusterSize - 1) / clusterSize;
+		clustersY = (height + clusterSize - 1) / clusterSize;
+
+		edges = new int[width * height][];
+		edgeCount = new int[width * height];
+		clusterNodes = new int[clustersX * clustersY][];
+		clusterNodeCount = new int[clustersX * clustersY];
+		for (int i=0;i<clusterNodes.length;i++) {
+			clusterNodes[i] = new int[8];
+		}
+		dirty = new boolean[clustersX * clustersY];
+
+		abstractContext = finder.createContext();
+		startContext = finder.createContext();
+		targetContext = finder.createContext();
+
+		for (int i=0;i<dirty.length;i++) {
+			dirty[i] = true;
+		}
+		rebuild();
+	}
+
+	/**
+	 * Notify the finder that the terrain of a tile changed. The finder reads
+	 * the new cost from the map and the clusters around the tile are rebuilt
+	 * before the next search. Tiles updated through the finder underneath
+	 * are noticed too, but then every cluster is rebuilt.
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 */
+	public void updateTile(int x, int y) {
+		boolean current = (finder.getLayerRevision() == layerRevision);
+		finder.updateTile(x, y);
+		if (current) {
+			// the change is marked below, the rest of the graph is still up to date
+			layerRevision = finder.getLayerRevision();
+		}
+		dirty[getCluster(y * width + x)] = true;
+		anyDirty = true;
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int)
+	 */
+	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {
+		Path path = new Path();
+		if (!findPath(mover, maxDistance, sx, sy, tx, ty, path)) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		if (finder.getLayerRevision() != layerRevision) {
+			// the map was changed through the finder underneath, which tiles is unknown
+			for (int i=0;i<dirty.length;i++) {
+				dirty[i] = true;
+			}
+			anyDirty = true;
+		}
+		if (anyDirty) {
+			rebuild();
+		}
+
+		int start = sy * width + sx;
+		int target = ty * width + tx;
+		int startCluster = getCluster(start);
+		int targetCluster = getCluster(target);
+		if (Math.abs(startCluster % clustersX - targetCluster % clustersX) <= 1
+				&& Math.abs(startCluster / clustersX - targetCluster / clustersX) <= 1) {
+			// close enough for the flat search
+			expandedCount = 0;
+			return findFlatPath(mover, maxDistance, sx, sy, tx, ty, path);
+		}
+		int[] layer = finder.getLayer(mover);
+		if (!finder.isValidLocation(layer, tx, ty)) {
+			path.clear();
+			return false;
+		}
+
+		searchCluster(startContext, layer, startCluster, start);
+		searchCluster(targetContext, layer, targetCluster, target);
+		expandedCount = startContext.expandedCount + targetContext.expandedCount;
+		// the graph holds terrain costs, the budget is checked on the refined path instead
+		if (!searchAbstract(mover, layer, UNLIMITED, start, target)) {
+			// the mover may get through where the terrain is blocked
+			return findFlatPath(mover, maxDistance, sx, sy, tx, ty, path);
+		}
+
+		// read the abstract path back from the target
+		int count = 0;
+		for (int tile = target; tile >= 0; tile = abstractContext.parent[tile]) {
+			if (count == waypoints.length) {
+				int[] grown = new int[count * 2];
+				System.arraycopy(waypoints, 0, grown, 0, count);
+				waypoints = grown;
+			}
+			waypoints[count] = tile;
+			count++;
+		}
+
+		// refine each hop, from the start
+		path.clear();
+		path.appendStep(sx, sy);
+		int pathCost = 0;
+		for (int i=count - 1;i>0;i--) {
+			int from = waypoints[i];
+			int to = waypoints[i - 1];
+			if (!finder.findPath(startContext, mover, UNLIMITED, from % width, from / width, to % width, to / width, segment)) {
+				// the mover is blocked where the terrain is not, search the whole map
+				return findFlatPath(mover, maxDistance, sx, sy, tx, ty, path);
+			}
+			expandedCount += startContext.expandedCount;
+			for (int s=1;s<segment.getLength();s++) {
+				path.appendStep(segment.getX(s), segment.getY(s));
+				pathCost += layer[segment.getY(s) * width + segment.getX(s)];
+			}
+		}
+		if (pathCost > maxDistance) {
+			// the path is not always the cheapest, one within the budget may still be there
+			return findFlatPath(mover, maxDistance, sx, sy, tx, ty, path);
+		}
+		return true;
+	}
+
+	/**
+	 * Search the whole map with the flat finder, for the paths the abstract
+	 * graph can't be trusted with
+	 *
+	 * @param mover The entity that will be moving along the path
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinate of the target location
+	 * @param ty The y coordinate of the target location
+	 * @param path The path to overwrite with the steps found, cleared if there are none
+	 * @return True if a path was found
+	 */
+	private boolean findFlatPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		boolean found = finder.findPath(startContext, mover, maxDistance, sx, sy, tx, ty, path);
+		expandedCount += startContext.expandedCount;
+		if (!found) {
+			path.clear();
+		}
+		return found;
+	}
+
+	/**
+	 * Search the abstract graph from the nodes of the start cluster to the
+	 * target, which is reached from the nodes of the target cluster
+	 *
+	 * @param mover The entity that will be moving along the path
+	 * @param layer The movement layer of the mover
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param start The index of the start tile
+	 * @param target The index of the target tile
+	 * @return True if the target was reached
+	 */
+	private boolean searchAbstract(Mover mover, int[] layer, int maxDistance, int start, int target) {
+		SearchContext context = abstractContext;
+		int[] depth = context.depth;
+		int tx = target % width;
+		int ty = target / width;
+		int targetCluster = getCluster(target);
+
+		int startCluster = getCluster(start);
+
+		context.startSearch();
+		// read once, a heuristic swapped in by another thread takes effect on the next search
+		context.heuristic = finder.heuristic;
+		context.touch(start);
+		depth[start] = 0;
+		context.addToOpen(start, context.heuristic.getCost(mover, start % width, start / width, tx, ty));
+		context.touch(target);
+
+		while (!context.open.isEmpty()) {
+			int current = context.open.pop();
+			if (current == target) {
+				break;
+			}
+			context.state[current] = SearchContext.CLOSED;
+			context.expandedCount++;
+
+			if (current == start) {
+				// the search from the start found the way to the nodes of its cluster
+				for (int i=0;i<clusterNodeCount[startCluster];i++) {
+					int node = clusterNodes[startCluster][i];
+					startContext.touch(node);
+					relax(context, mover, start, node, startContext.depth[node], maxDistance, tx, ty);
+				}
+			}
+			if (getCluster(current) == targetCluster) {
+				// the search from the target found the way back from this node,
+				// the same tiles walked the other way have the end costs swapped
+				targetContext.touch(current);
+				int back = targetContext.depth[current];
+				if (back != Integer.MAX_VALUE) {
+					int toTarget = back - layer[current] + layer[target];
+					relax(context, mover, current, target, toTarget, maxDistance, tx, ty);
+				}
+			}
+			int[] nodeEdges = edges[current];
+			for (int e=0;e<edgeCount[current];e++) {
+				relax(context, mover, current, nodeEdges[e * 2], nodeEdges[e * 2 + 1], maxDistance, tx, ty);
+			}
+		}
+		expandedCount += context.expandedCount;
+		return depth[target] != Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Reach a tile of the abstract search from another, if that is cheaper
+	 * than the way it is already known to be reached
+	 *
+	 * @param context The context of the abstract search
+	 * @param mover The entity that will be moving along the path
+	 * @param from The index of the tile expanded
+	 * @param to The index of the tile reached
+	 * @param stepCost The cost of going from one to the other, Integer.MAX_VALUE if they are not connected
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param tx The x coordinate of the target location
+	 * @param ty The y coordinate of the target location
+	 */
+	private void relax(SearchContext context, Mover mover, int from, int to, int stepCost, int maxDistance, int tx, int ty) {
+		if (stepCost == Integer.MAX_VALUE || to == from) {
+			return;
+		}
+		context.touch(to);
+		int nextStepCost = context.depth[from] + stepCost;
+		if (nextStepCost > maxDistance || nextStepCost >= context.depth[to]) {
+			return;
+		}
+		context.depth[to] = nextStepCost;
+		context.parent[to] = from;
+		context.addToOpen(to, context.heuristic.getCost(mover, to % width, to / width, tx, ty));
+	}
+
+	/**
+	 * Find the cost of reaching every tile of a cluster from one of its
+	 * tiles without leaving the cluster
+	 *
+	 * @param context The context to hold the costs found
+	 * @param layer The movement layer of the entity that will be moving
+	 * @param cluster The index of the cluster
+	 * @param from The index of the tile to search from
+	 */
+	private void searchCluster(SearchContext context, int[] layer, int cluster, int from) {
+		int minX = (cluster % clustersX) * clusterSize;
+		int minY = (cluster / clustersX) * clusterSize;
+		int maxX = Math.min(width, minX + clusterSize) - 1;
+		int maxY = Math.min(height, minY + clusterSize) - 1;
+		int[] depth = context.depth;
+
+		context.startSearch();
+		context.touch(from);
+		depth[from] = 0;
+		context.addToOpen(from, 0);
+
+		int directions = finder.allowDiagMovement ? 8 : 4;
+		while (!context.open.isEmpty()) {
+			int current = context.open.pop();
+			context.state[current] = SearchContext.CLOSED;
+			context.expandedCount++;
+
+			int cx = current % width;
+			int cy = current / width;
+			for (int i=0;i<directions;i++) {
+				int nx = cx + GridPathFinder.DX[i];
+				int ny = cy + GridPathFinder.DY[i];
+				if ((nx < minX) || (ny < minY) || (nx > maxX) || (ny > maxY) || !finder.isValidLocation(layer, nx, ny)) {
+					continue;
+				}
+				// a diagonal step may not cut the corner of a blocked tile
+				if (i >= 4 && (!finder.isValidLocation(layer, nx, cy) || !finder.isValidLocation(layer, cx, ny))) {
+					continue;
+				}
+
+				int neighbour = ny * width + nx;
+				context.touch(neighbour);
+				int nextStepCost = depth[current] + layer[neighbour];
+				if (nextStepCost >= depth[neighbour]) {
+					continue;
+				}
+				depth[neighbour] = nextStepCost;
+				context.parent[neighbour] = current;
+				context.addToOpen(neighbour, 0);
+			}
+		}
+	}
+
+	/**
+	 * Rebuild the clusters marked dirty. The entrances on their borders are
+	 * found again, which changes the nodes of the clusters next to them, so
+	 * the links inside those are worked out again too.
+	 */
+	private void rebuild() {
+		layerRevision = finder.getLayerRevision();
+		terrain = finder.getLayer(null);
+		boolean[] affected = new boolean[dirty.length];
+		for (int c=0;c<dirty.length;c++) {
+			if (dirty[c]) {
+				int cx = c % clustersX;
+				int cy = c / clustersX;
+				affected[c] = true;
+				if (cx > 0) {
+					affected[c - 1] = true;
+				}
+				if (cx < clustersX - 1) {
+					affected[c + 1] = true;
+				}
+				if (cy > 0) {
+					affected[c - clustersX] = true;
+				}
+				if (cy < clustersY - 1) {
+					affected[c + clustersX] = true;
+				}
+				dirty[c] = false;
+			}
+		}
+		anyDirty = false;
+
+		for (int c=0;c<affected.length;c++) {
+			if (affected[c]) {
+				removeNodes(c);
+			}
+		}
+		for (int c=0;c<affected.length;c++) {
+			int cx = c % clustersX;
+			int cy = c / clustersX;
+			if (cx < clustersX - 1 && (affected[c] || affected[c + 1])) {
+				findEntrances(cx, cy, true);
+			}
+			if (cy < clustersY - 1 && (affected[c] || affected[c + clustersX])) {
+				findEntrances(cx, cy, false);
+			}
+		}
+		for (int c=0;c<affected.length;c++) {
+			if (affected[c]) {
+				linkCluster(c);
+			}
+		}
+	}
+
+	/**
+	 * Find the entrances on the border between a cluster and the one to its
+	 * right or below, adding a node on each side of each entrance
+	 *
+	 * @param cx The x coordinate of the cluster, in clusters
+	 * @param cy The y coordinate of the cluster, in clusters
+	 * @param vertical True for the border to the right, false for the one below
+	 */
+	private void findEntrances(int cx, int cy, boolean vertical) {
+		// tiles along the border are at (x + i * dx, y + i * dy), across it at (x + ox, y + oy)
+		int x = vertical ? (cx + 1) * clusterSize - 1 : cx * clusterSize;
+		int y = vertical ? cy * clusterSize : (cy + 1) * clusterSize - 1;
+		int dx = vertical ? 0 : 1;
+		int dy = vertical ? 1 : 0;
+		int ox = vertical ? 1 : 0;
+		int oy = vertical ? 0 : 1;
+		int length = vertical ? Math.min(clusterSize, height - y) : Math.min(clusterSize, width - x);
+
+		int runStart = -1;
+		for (int i=0;i<=length;i++) {
+			boolean open = (i < length)
+					&& finder.isValidLocation(terrain, x + i * dx, y + i * dy)
+					&& finder.isValidLocation(terrain, x + i * dx + ox, y + i * dy + oy);
+			if (open && runStart < 0) {
+				runStart = i;
+			} else if (!open && runStart >= 0) {
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 < WIDE_ENTRANCE) {
+					addEntrance(x, y, dx, dy, ox, oy, (runStart + runEnd) / 2);
+				} else {
+					addEntrance(x, y, dx, dy, ox, oy, runStart);
+					addEntrance(x, y, dx, dy, ox, oy, runEnd);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	/**
+	 * Add the nodes on both sides of an entrance and link them
+	 *
+	 * @param x The x coordinate of the first tile of the border
+	 * @param y The y coordinate of the first tile of the border
+	 * @param dx The x step along the border
+	 * @param dy The y step along the border
+	 * @param ox The x step across the border
+	 * @param oy The y step across the border
+	 * @param i The position of the entrance along the border
+	 */
+	private void addEntrance(int x, int y, int dx, int dy, int ox, int oy, int i) {
+		int near = (y + i * dy) * width + (x + i * dx);
+		int far = near + oy * width + ox;
+		addNode(near);
+		addNode(far);
+		addEdge(near, far, terrain[far]);
+		addEdge(far, near, terrain[near]);
+	}
+
+	/**
+	 * Link every node of a cluster to the others it can reach inside it
+	 *
+	 * @param cluster The index of the cluster
+	 */
+	private void linkCluster(int cluster) {
+		int[] nodes = clusterNodes[cluster];
+		for (int i=0;i<clusterNodeCount[cluster];i++) {
+			searchCluster(startContext, terrain, cluster, nodes[i]);
+			for (int j=0;j<clusterNodeCount[cluster];j++) {
+				if (i == j) {
+					continue;
+				}
+				startContext.touch(nodes[j]);
+				if (startContext.depth[nodes[j]] != Integer.MAX_VALUE) {
+					addEdge(nodes[i], nodes[j], startContext.depth[nodes[j]]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Make a tile a node of the abstract graph, if it is not one already
+	 *
+	 * @param tile The index of the tile
+	 */
+	private void addNode(int tile) {
+		if (edges[tile] != null) {
+			return;
+		}
+		edges[tile] = new int[8];
+		edgeCount[tile] = 0;
+
+		int cluster = getCluster(tile);
+		int count = clusterNodeCount[cluster];
+		if (count == clusterNodes[cluster].length) {
+			int[] grown = new int[count * 2];
+			System.arraycopy(clusterNodes[cluster], 0, grown, 0, count);
+			clusterNodes[cluster] = grown;
+		}
+		clusterNodes[cluster][count] = tile;
+		clusterNodeCount[cluster] = count + 1;
+	}
+
+	/**
+	 * Remove every node of a cluster, together with the edges leading to them
+	 *
+	 * @param cluster The index of the cluster
+	 */
+	private void removeNodes(int cluster) {
+		for (int i=0;i<clusterNodeCount[cluster];i++) {
+			int node = clusterNodes[cluster][i];
+			for (int e=0;e<edgeCount[node];e++) {
+				removeEdge(edges[node][e * 2], node);
+			}
+			edges[node] = null;
+			edgeCount[node] = 0;
+		}
+		clusterNodeCount[cluster] = 0;
+	}
+
+	/**
+	 * Link one node to another, keeping the cheapest cost if they are linked already
+	 *
+	 * @param from The index of the node the edge leaves from
+	 * @param to The index of the node the edge leads to
+	 * @param cost The cost of going from one to the other
+	 */
+	private void addEdge(int from, int to, int cost) {
+		int[] nodeEdges = edges[from];
+		int count = edgeCount[from];
+		for (int e=0;e<count;e++) {
+			if (nodeEdges[e * 2] == to) {
+				nodeEdges[e * 2 + 1] = Math.min(nodeEdges[e * 2 + 1], cost);
+				return;
+			}
+		}
+		if (count * 2 == nodeEdges.length) {
+			int[] grown = new int[nodeEdges.length * 2];
+			System.arraycopy(nodeEdges, 0, grown, 0, nodeEdges.length);
+			edges[from] = nodeEdges = grown;
+		}
+		nodeEdges[count * 2] = to;
+		nodeEdges[count * 2 + 1] = cost;
+		edgeCount[from] = count + 1;
+	}
+
+	/**
+	 * Remove the edge from one node to another, if there is one
+	 *
+	 * @param from The index of the node the edge leaves from
+	 * @param to The index of the node the edge leads to
+	 */
+	private void removeEdge(int from, int to) {
+		int[] nodeEdges = edges[from];
+		if (nodeEdges == null) {
+			return;
+		}
+		int count = edgeCount[from];
+		for (int e=0;e<count;e++) {
+			if (nodeEdges[e * 2] == to) {
+				// move the last edge into the gap
+				nodeEdges[e * 2] = nodeEdges[(count - 1) * 2];
+				nodeEdges[e * 2 + 1] = nodeEdges[(count - 1) * 2 + 1];
+				edgeCount[from] = count - 1;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get the cluster a tile belongs to
+	 *
+	 * @param tile The index of the tile
+	 * @return The index of the cluster
+	 */
+	private int getCluster(int tile) {
+		return ((tile / width) / clusterSize) * clustersX + (tile % width) / clusterSize;
+	}
+
+	/**
+	 * Get the number of nodes in the abstract graph
+	 *
+	 * @return The number of entrance tiles over all clusters
+	 */
+	public int getNodeCount() {
+		int count = 0;
+		for (int c=0;c<clusterNodeCount.length;c++) {
+			count += clusterNodeCount[c];
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of tiles and nodes expanded by the last search, over
+	 * the searches inside the start and target clusters, the abstract search
+	 * and the refinement
+	 *
+	 * @return The number of tiles and nodes expanded
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+}
@@ -0,0 +1,365 @@
+package com.qylla.util.pathfinding;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.PathFinder;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+
+/**
+ * A path finder that keeps its search between calls and repairs it when
+ * tiles change, using D* Lite. The search runs backwards from the target,
+ * so it stays valid as the mover walks along the path. When tiles become
+ * blocked or free, or change cost, only the part of the search that
+ * depended on them is worked out again, which is much less than searching
+ * the whole map from scratch.
+ *
+ * One finder plans for one mover going to one target. Asking for a path
+ * to another target, or for another mover, starts a new search. Tiles
+ * whose cost or blocking changed since the last call must be reported
+ * with {@link #updateTile(int, int)}, including tiles freed or taken by
+ * other units. Costs and blocking are read from the movement layers of a
+ * GridPathFinder.
+ *
+ * A finder keeps working state between searches and must only be used by
+ * one thread at a time.
+ *
+ * @author Cesar Ramirez
+ */
+public class IncrementalPathFinder implements PathFinder {
+	/** The finder holding the map data, its costs are kept up to date */
+	private GridPathFinder finder;
+	/** The width of the map in tiles */
+	private int width;
+	/** The height of the map in tiles */
+	private int height;
+	/** The cost of the cheapest known path from each tile to the target */
+	private int[] g;
+	/** The one step lookahead of g, the cheapest neighbour's g plus the step to it */
+	private int[] rhs;
+	/** The search generation the data of each tile belongs to */
+	private int[] generation;
+	/** The number of the current search */
+	private int searchGeneration;
+	/** The tiles whose g and rhs differ */
+	private IndexHeap open;
+	/** The amount the keys in the open list fall behind as the start moves */
+	private float keyModifier;
+	/** The mover planned for, the search is started again for another */
+	private Mover mover;
+	/** The movement layer of the mover */
+	private int[] layer;
+	/** The heuristic of the finder read when the search started, the keys are worked out from it */
+	private AStarHeuristic heuristic;
+	/** The index of the target tile, -1 before the first search */
+	private int target = -1;
+	/** The index of the start tile of the last search */
+	private int start = -1;
+	/** The tiles reported as changed since the last search */
+	private int[] changed = new int[16];
+	/** The number of tiles reported as changed */
+	private int changedCount;
+	/** The number of tiles expanded by the last search */
+	private int expandedCount;
+
+	/**
+	 * Create a path finder
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 */
+	public IncrementalPathFinder(TileBasedMap map, boolean allowDiagMovement) {
+		this(new GridPathFinder(map, allowDiagMovement));
+	}
+
+	/**
+	 * Create a path finder using the map data and heuristic of another finder
+	 *
+	 * @param finder The finder holding the costs of the map
+	 */
+	public IncrementalPathFinder(GridPathFinder finder) {
+		this.finder = finder;
+		this.width = finder.width;
+		this.height = finder.height;
+		g = new int[width * height];
+		rhs = new int[width * height];
+		generation = new int[width * height];
+		open = new IndexHeap(width * height);
+	}
+
+	/**
+	 * Notify the finder that a tile changed, either its terrain or whether
+	 * it is blocked. The search is repaired around it on the next call.
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 */
+	public void updateTile(int x, int y) {
+		finder.updateTile(x, y);
+		if (changedCount == changed.length) {
+			int[] grown = new int[changedCount * 2];
+			System.arraycopy(changed, 0, grown, 0, changedCount);
+			changed = grown;
+		}
+		changed[changedCount] = y * width + x;
+		changedCount++;
+	}
+
+	/**
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int)
+	 */
+	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty) {
+		Path path = new Path();
+		if (!findPath(mover, maxDistance, sx, sy, tx, ty, path)) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * Find a path, repairing the search of the last call if it was for the
+	 * same mover and target.
+	 *
+	 * @see PathFinder#findPath(Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		int newTarget = ty * width + tx;
+		int newStart = sy * width + sx;
+		layer = finder.getLayer(mover);
+		// easy first check, if the destination is blocked, we can't get there
+		if (!finder.isValidLocation(layer, tx, ty)) {
+			path.clear();
+			return false;
+		}
+		if (newTarget != target || mover != this.mover || finder.heuristic != heuristic) {
+			start = newStart;
+			startSearch(mover, newTarget);
+		} else if (newStart != start) {
+			// the keys already in the open list were worked out from the old start
+			keyModifier += heuristic(start, newStart);
+			start = newStart;
+		}
+		touch(start);
+
+		for (int i=0;i<changedCount;i++) {
+			// the steps into a changed tile and the diagonals around it changed
+			int cx = changed[i] % width;
+			int cy = changed[i] / width;
+			updateVertex(changed[i]);
+			for (int d=0;d<8;d++) {
+				int nx = cx + GridPathFinder.DX[d];
+				int ny = cy + GridPathFinder.DY[d];
+				if ((nx >= 0) && (ny >= 0) && (nx < width) && (ny < height)) {
+					updateVertex(ny * width + nx);
+				}
+			}
+		}
+		changedCount = 0;
+
+		expandedCount = 0;
+		computeShortestPath();
+
+		if (g[start] > maxDistance) {
+			return false;
+		}
+
+		// walk down the costs to the target
+		path.clear();
+		path.appendStep(sx, sy);
+		int directions = finder.allowDiagMovement ? 8 : 4;
+		for (int current = start; current != target;) {
+			if (path.getLength() > g.length) {
+				// only possible with tiles that cost nothing, going round in circles
+				return false;
+			}
+			int cx = current % width;
+			int cy = current / width;
+			int best = -1;
+			int bestCost = Integer.MAX_VALUE;
+			for (int d=0;d<directions;d++) {
+				int next = getNeighbour(cx, cy, d);
+				if (next >= 0) {
+					touch(next);
+					if (g[next] != Integer.MAX_VALUE && g[next] + layer[next] < bestCost) {
+						best = next;
+						bestCost = g[next] + layer[next];
+					}
+				}
+			}
+			if (best < 0) {
+				return false;
+			}
+			current = best;
+			path.appendStep(current % width, current / width);
+		}
+		return true;
+	}
+
+	/**
+	 * Throw away the search and start a new one
+	 *
+	 * @param mover The mover to plan for
+	 * @param target The index of the target tile
+	 */
+	private void startSearch(Mover mover, int target) {
+		this.mover = mover;
+		this.target = target;
+		heuristic = finder.heuristic;
+		open.clear();
+		keyModifier = 0;
+		changedCount = 0;
+		searchGeneration++;
+		if (searchGeneration == Integer.MAX_VALUE) {
+			// the stamps are about to wrap around, reset them all once
+			for (int i=0;i<generation.length;i++) {
+				generation[i] = 0;
+			}
+			searchGeneration = 1;
+		}
+
+		touch(target);
+		rhs[target] = 0;
+		open.push(target, getKey(target), 0);
+	}
+
+	/**
+	 * Settle tiles until the start has its final cost
+	 */
+	private void computeShortestPath() {
+		int directions = finder.allowDiagMovement ? 8 : 4;
+		while (!open.isEmpty()) {
+			int current = open.peek();
+			float key = open.peekKey();
+			int tie = open.getTie(current);
+			float startKey = getKey(start);
+			int startTie = Math.min(g[start], rhs[start]);
+			if ((key > startKey || (key == startKey && tie >= startTie)) && rhs[start] == g[start]) {
+				break;
+			}
+
+			float newKey = getKey(current);
+			int newTie = Math.min(g[current], rhs[current]);
+			if (key < newKey || (key == newKey && tie < newTie)) {
+				// the key is out of date since the start moved
+				open.push(current, newKey, newTie);
+				continue;
+			}
+
+			expandedCount++;
+			open.pop();
+			if (g[current] > rhs[current]) {
+				g[current] = rhs[current];
+			} else {
+				g[current] = Integer.MAX_VALUE;
+				updateVertex(current);
+			}
+			int cx = current % width;
+			int cy = current / width;
+			for (int d=0;d<directions;d++) {
+				int nx = cx + GridPathFinder.DX[d];
+				int ny = cy + GridPathFinder.DY[d];
+				if ((nx >= 0) && (ny >= 0) && (nx < width) && (ny < height)) {
+					updateVertex(ny * width + nx);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Work out the lookahead cost of a tile again and put it in the open
+	 * list if it no longer matches the tile's cost
+	 *
+	 * @param index The index of the tile
+	 */
+	private void updateVertex(int index) {
+		touch(index);
+		if (index != target) {
+			int cx = index % width;
+			int cy = index / width;
+			int best = Integer.MAX_VALUE;
+			int directions = finder.allowDiagMovement ? 8 : 4;
+			for (int d=0;d<directions;d++) {
+				int next = getNeighbour(cx, cy, d);
+				if (next >= 0) {
+					touch(next);
+					if (g[next] != Integer.MAX_VALUE) {
+						best = Math.min(best, g[next] + layer[next]);
+					}
+				}
+			}
+			rhs[index] = best;
+		}
+
+		open.remove(index);
+		if (g[index] != rhs[index]) {
+			open.push(index, getKey(index), Math.min(g[index], rhs[index]));
+		}
+	}
+
+	/**
+	 * Get the neighbour a tile can step into in a direction
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @param direction The index of the direction in GridPathFinder.DX and DY
+	 * @return The index of the neighbour, or -1 if the step is not possible
+	 */
+	private int getNeighbour(int x, int y, int direction) {
+		int nx = x + GridPathFinder.DX[direction];
+		int ny = y + GridPathFinder.DY[direction];
+		if (!finder.isValidLocation(layer, nx, ny)) {
+			return -1;
+		}
+		// a diagonal step may not cut the corner of a blocked tile
+		if (direction >= 4 && (!finder.isValidLocation(layer, nx, y) || !finder.isValidLocation(layer, x, ny))) {
+			return -1;
+		}
+		return ny * width + nx;
+	}
+
+	/**
+	 * Get the key a tile is ordered by in the open list
+	 *
+	 * @param index The index of the tile
+	 * @return The smaller of g and rhs plus the estimate from the start
+	 */
+	private float getKey(int index) {
+		int cost = Math.min(g[index], rhs[index]);
+		if (cost == Integer.MAX_VALUE) {
+			return Float.MAX_VALUE;
+		}
+		return cost + heuristic(start, index) + keyModifier;
+	}
+
+	/**
+	 * Estimate the cost of going from one tile to another
+	 *
+	 * @param from The index of the first tile
+	 * @param to The index of the second tile
+	 * @return The heuristic cost
+	 */
+	private float heuristic(int from, int to) {
+		return heuristic.getCost(mover, from % width, from / width, to % width, to / width);
+	}
+
+	/**
+	 * Make sure the data of a tile belongs to the current search
+	 *
+	 * @param index The index of the tile
+	 */
+	private void touch(int index) {
+		if (generation[index] != searchGeneration) {
+			generation[index] = searchGeneration;
+			g[index] = Integer.MAX_VALUE;
+			rhs[index] = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Get the number of tiles expanded by the last search or repair
+	 *
+	 * @return The number of tiles taken out of the open list
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+}
@@ -0,0 +1,259 @@
+package com.qylla.util.pathfinding;
+
+/**
+ * An indexed binary min-heap of tile indexes. The keys are kept in arrays
+ * indexed by tile so that the heap itself never allocates once created,
+ * membership checks are constant time and insertion, removal and key
+ * updates are logarithmic.
+ *
+ * Elements are ordered by their key, ties are resolved by the lowest
+ * tie breaker.
+ *
+ * @author Cesar Ramirez
+ */
+public class IndexHeap {
+	/** The heap storage, the root of the heap is at index 0 */
+	private int[] heap;
+	/** The slot of each tile in the heap, only meaningful if the slot points back to the tile */
+	private int[] position;
+	/** The key of each tile */
+	private float[] keys;
+	/** The tie breaker of each tile */
+	private int[] ties;
+	/** The number of elements in the heap */
+	private int size;
+	/** The highest number of elements in the heap since it was last emptied */
+	private int peakSize;
+
+	/**
+	 * Create a heap
+	 *
+	 * @param capacity The number of distinct tile indexes the heap can hold
+	 */
+	public IndexHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		keys = new float[capacity];
+		ties = new int[capacity];
+	}
+
+	/**
+	 * Empty the heap. This is constant time, stale positions are detected
+	 * by {@link #contains(int)}.
+	 */
+	public void clear() {
+		size = 0;
+		peakSize = 0;
+	}
+
+	/**
+	 * Get the number of elements in the heap
+	 *
+	 * @return The number of elements in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if the heap is empty
+	 *
+	 * @return True if there are no elements in the heap
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Get the highest number of elements the heap held since it was last
+	 * emptied with {@link #clear()}
+	 *
+	 * @return The peak size of the heap
+	 */
+	public int getPeakSize() {
+		return peakSize;
+	}
+
+	/**
+	 * Check if a tile is in the heap
+	 *
+	 * @param index The tile index to search for
+	 * @return True if the tile is in the heap
+	 */
+	public boolean contains(int index) {
+		int slot = position[index];
+		return slot < size && heap[slot] == index;
+	}
+
+	/**
+	 * Add a tile to the heap, or change its key if it is already there
+	 *
+	 * @param index The tile index
+	 * @param key The key of the tile, lower keys come out first
+	 * @param tie The tie breaker for tiles with the same key, lower comes out first
+	 */
+	public void push(int index, float key, int tie) {
+		keys[index] = key;
+		ties[index] = tie;
+		if (contains(index)) {
+			siftDown(siftUp(position[index]));
+		} else {
+			heap[size] = index;
+			position[index] = size;
+			size++;
+			if (size > peakSize) {
+				peakSize = size;
+			}
+			siftUp(size - 1);
+		}
+	}
+
+	/**
+	 * Get the tile with the lowest key without removing it
+	 *
+	 * @return The tile index at the top of the heap
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Get the lowest key in the heap
+	 *
+	 * @return The key of the tile at the top of the heap
+	 */
+	public float peekKey() {
+		return keys[heap[0]];
+	}
+
+	/**
+	 * Get the tile at a slot of the heap, to walk over every element. The
+	 * slots are in no particular order.
+	 *
+	 * @param slot The slot, at least 0 and less than {@link #size()}
+	 * @return The tile index at the slot
+	 */
+	public int get(int slot) {
+		return heap[slot];
+	}
+
+	/**
+	 * Get the key a tile was last pushed with
+	 *
+	 * @param index The tile index
+	 * @return The key of the tile
+	 */
+	public float getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Get the tie breaker a tile was last pushed with
+	 *
+	 * @param index The tile index
+	 * @return The tie breaker of the tile
+	 */
+	public int getTie(int index) {
+		return ties[index];
+	}
+
+	/**
+	 * Remove the tile with the lowest key from the heap
+	 *
+	 * @return The tile index that was at the top of the heap
+	 */
+	public int pop() {
+		int top = heap[0];
+		size--;
+		if (size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		position[top] = size;
+		heap[size] = -1;
+		return top;
+	}
+
+	/**
+	 * Remove a tile from the heap
+	 *
+	 * @param index The tile index to remove
+	 */
+	public void remove(int index) {
+		if (!contains(index)) {
+			return;
+		}
+		int slot = position[index];
+		size--;
+		if (slot != size) {
+			heap[slot] = heap[size];
+			position[heap[slot]] = slot;
+			siftDown(siftUp(slot));
+		}
+		heap[size] = -1;
+	}
+
+	/**
+	 * Check if one tile should come out of the heap before another
+	 *
+	 * @param a The first tile index
+	 * @param b The second tile index
+	 * @return True if a is strictly lower than b
+	 */
+	private boolean less(int a, int b) {
+		float ka = keys[a];
+		float kb = keys[b];
+		return ka < kb || (ka == kb && ties[a] < ties[b]);
+	}
+
+	/**
+	 * Move the element at the given slot towards the root
+	 *
+	 * @param slot The slot of the element to move
+	 * @return The final slot of the element
+	 */
+	private int siftUp(int slot) {
+		int index = heap[slot];
+		while (slot > 0) {
+			int parentSlot = (slot - 1) >> 1;
+			int parent = heap[parentSlot];
+			if (!less(index, parent)) {
+				break;
+			}
+			heap[slot] = parent;
+			position[parent] = slot;
+			slot = parentSlot;
+		}
+		heap[slot] = index;
+		position[index] = slot;
+		return slot;
+	}
+
+	/**
+	 * Move the element at the given slot towards the leaves
+	 *
+	 * @param slot The slot of the element to move
+	 */
+	private void siftDown(int slot) {
+		int index = heap[slot];
+		int half = size >> 1;
+		while (slot < half) {
+			int childSlot = (slot << 1) + 1;
+			int child = heap[childSlot];
+			int rightSlot = childSlot + 1;
+			if (rightSlot < size && less(heap[rightSlot], child)) {
+				childSlot = rightSlot;
+				child = heap[rightSlot];
+			}
+			if (!less(child, index)) {
+				break;
+			}
+			heap[slot] = child;
+			position[child] = slot;
+			slot = childSlot;
+		}
+		heap[slot] = index;
+		position[index] = slot;
+	}
+}
@@ -0,0 +1,389 @@
+package com.qylla.util.pathfinding;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+
+/**
+ * A path finder that uses Jump Point Search to skip over the open areas of
+ * a map. On ground where every tile costs the same, many paths between two
+ * tiles cost the same too, and plain AStar expands all of them. Jump Point
+ * Search only expands the tiles where a path may have to turn, the jump
+ * points, and moves in straight lines between them.
+ *
+ * Jumping is only sound where every step costs the same, so the finder
+ * works out the most common tile cost of each movement layer and marks as
+ * plain every tile that costs that much and whose neighbours cost that
+ * much too, or can't be entered at all. A
+ * jump stops on the first tile that is not plain, and such tiles are
+ * expanded to all of their neighbours like in a regular AStar search.
+ * Paths found are optimal, and on maps with no plain tiles the search is
+ * the regular one.
+ *
+ * Both four and eight way movement are supported. As in GridPathFinder a
+ * diagonal step may not cut the corner of a blocked tile.
+ *
+ * @author Cesar Ramirez
+ */
+public class JumpPointPathFinder extends GridPathFinder {
+	/** The plain tiles worked out so far, indexed like the movement layers */
+	private volatile PlainTiles[] plainTiles = new PlainTiles[1];
+
+	/**
+	 * The tiles of a movement layer the search can jump over
+	 *
+	 * @author Cesar Ramirez
+	 */
+	private static class PlainTiles {
+		/** The movement layer the tiles were worked out from */
+		private int[] layer;
+		/** The cost of the tiles the search can jump over */
+		private int uniformCost;
+		/** True for the tiles that, like all their neighbours, cost the uniform cost or can't be entered */
+		private boolean[] plain;
+	}
+
+	/**
+	 * Create a path finder
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 */
+	public JumpPointPathFinder(TileBasedMap map, boolean allowDiagMovement) {
+		super(map, allowDiagMovement);
+	}
+
+	/**
+	 * Create a path finder
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diaganol movement
+	 * @param heuristic The heuristic used to determine the search order of the map, it
+	 * must never overestimate the cost of reaching the target for the paths to be optimal
+	 */
+	public JumpPointPathFinder(TileBasedMap map, boolean allowDiagMovement, AStarHeuristic heuristic) {
+		super(map, allowDiagMovement, heuristic);
+	}
+
+	/**
+	 * Get the plain tiles of a mover's movement layer, working them out if
+	 * the layer is new
+	 *
+	 * @param mover The mover
+	 * @param layer The movement layer of the mover
+	 * @return The plain tiles of the layer
+	 */
+	private PlainTiles getPlainTiles(Mover mover, int[] layer) {
+		int index = getLayerIndex(mover);
+		PlainTiles[] current = plainTiles;
+		if (index < current.length && current[index] != null && current[index].layer == layer) {
+			return current[index];
+		}
+
+		PlainTiles tiles = new PlainTiles();
+		tiles.layer = layer;
+		int[] counts = new int[maximumCost + 1];
+		for (int i=0;i<layer.length;i++) {
+			if (layer[i] >= 0) {
+				counts[layer[i]]++;
+			}
+		}
+		for (int c=1;c<counts.length;c++) {
+			if (counts[c] > counts[tiles.uniformCost]) {
+				tiles.uniformCost = c;
+			}
+		}
+		tiles.plain = new boolean[layer.length];
+		for (int y=0;y<height;y++) {
+			for (int x=0;x<width;x++) {
+				updatePlain(tiles, x, y);
+			}
+		}
+
+		synchronized (this) {
+			PlainTiles[] grown = new PlainTiles[Math.max(plainTiles.length, index + 1)];
+			System.arraycopy(plainTiles, 0, grown, 0, plainTiles.length);
+			grown[index] = tiles;
+			plainTiles = grown;
+		}
+		return tiles;
+	}
+
+	/**
+	 * Work out if a tile is plain. Tiles that can't be entered never cost
+	 * anything, so they don't stop their neighbours from being plain.
+	 *
+	 * @param tiles The plain tiles to update
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 */
+	private void updatePlain(PlainTiles tiles, int x, int y) {
+		boolean uniform = true;
+		for (int ny=Math.max(0, y - 1);ny<=Math.min(height - 1, y + 1);ny++) {
+			for (int nx=Math.max(0, x - 1);nx<=Math.min(width - 1, x + 1);nx++) {
+				int stepCost = tiles.layer[ny * width + nx];
+				uniform &= (stepCost == tiles.uniformCost) || (stepCost == BLOCKED);
+			}
+		}
+		tiles.plain[y * width + x] = uniform;
+	}
+
+	/**
+	 * The uniform costs are kept, only the tile and its neighbours are
+	 * checked again.
+	 *
+	 * @see GridPathFinder#updateTile(int, int)
+	 */
+	public void updateTile(int x, int y) {
+		super.updateTile(x, y);
+		PlainTiles[] current = plainTiles;
+		for (int i=0;i<current.length;i++) {
+			if (current[i] == null) {
+				continue;
+			}
+			for (int ny=Math.max(0, y - 1);ny<=Math.min(height - 1, y + 1);ny++) {
+				for (int nx=Math.max(0, x - 1);nx<=Math.min(width - 1, x + 1);nx++) {
+					updatePlain(current[i], nx, ny);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @see GridPathFinder#findPath(SearchContext, Mover, int, int, int, int, int, Path)
+	 */
+	public boolean findPath(SearchContext context, Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path) {
+		context.startSearch();
+		// read once, a heuristic swapped in by another thread takes effect on the next search
+		context.heuristic = heuristic;
+		int[] layer = getLayer(mover);
+		PlainTiles tiles = getPlainTiles(mover, layer);
+		SearchTrace trace = context.trace;
+		int start = sy * width + sx;
+		int target = ty * width + tx;
+		if (trace != null) {
+			trace.record(SearchTrace.START, start, target);
+		}
+		// easy first check, if the destination is blocked, we can't get there
+		if (!isValidLocation(layer, tx, ty)) {
+			if (trace != null) {
+				trace.record(SearchTrace.FINISH, target, -1);
+			}
+			return false;
+		}
+
+		int[] depth = context.depth;
+		int[] parent = context.parent;
+
+		context.touch(start);
+		depth[start] = 0;
+		context.addToOpen(start, context.heuristic.getCost(mover, sx, sy, tx, ty));
+		context.touch(target);
+
+		int directions = allowDiagMovement ? 8 : 4;
+		while (!context.open.isEmpty()) {
+			int current = context.open.pop();
+			if (current == target) {
+				break;
+			}
+			context.state[current] = SearchContext.CLOSED;
+			context.expandedCount++;
+			if (trace != null) {
+				trace.record(SearchTrace.EXPAND, current, depth[current]);
+			}
+
+			int cx = current % width;
+			int cy = current / width;
+			int remaining = maxDistance - depth[current];
+			int maxSteps = (tiles.uniformCost > 0) ? (remaining / tiles.uniformCost) + 1 : Integer.MAX_VALUE;
+
+			if (!tiles.plain[current] || parent[current] < 0) {
+				// the start and the tiles off the plains are expanded to all their neighbours
+				for (int i=0;i<directions;i++) {
+					jumpFrom(context, mover, tiles, maxDistance, current, DX[i], DY[i], target, tx, ty, maxSteps);
+				}
+				continue;
+			}
+
+			// only the natural and forced neighbours for the direction we came from
+			int px = parent[current] % width;
+			int py = parent[current] / width;
+			int dx = (cx > px) ? 1 : ((cx < px) ? -1 : 0);
+			int dy = (cy > py) ? 1 : ((cy < py) ? -1 : 0);
+			if (dx != 0 && dy != 0) {
+				jumpFrom(context, mover, tiles, maxDistance, current, dx, 0, target, tx, ty, maxSteps);
+				jumpFrom(context, mover, tiles, maxDistance, current, 0, dy, target, tx, ty, maxSteps);
+				jumpFrom(context, mover, tiles, maxDistance, current, dx, dy, target, tx, ty, maxSteps);
+			} else if (dx != 0) {
+				jumpFrom(context, mover, tiles, maxDistance, current, dx, 0, target, tx, ty, maxSteps);
+				jumpFrom(context, mover, tiles, maxDistance, current, 0, 1, target, tx, ty, maxSteps);
+				jumpFrom(context, mover, tiles, maxDistance, current, 0, -1, target, tx, ty, maxSteps);
+				if (allowDiagMovement) {
+					jumpFrom(context, mover, tiles, maxDistance, current, dx, 1, target, tx, ty, maxSteps);
+					jumpFrom(context, mover, tiles, maxDistance, current, dx, -1, target, tx, ty, maxSteps);
+				}
+			} else {
+				jumpFrom(context, mover, tiles, maxDistance, current, 0, dy, target, tx, ty, maxSteps);
+				jumpFrom(context, mover, tiles, maxDistance, current, 1, 0, target, tx, ty, maxSteps);
+				jumpFrom(context, mover, tiles, maxDistance, current, -1, 0, target, tx, ty, maxSteps);
+				if (allowDiagMovement) {
+					jumpFrom(context, mover, tiles, maxDistance, current, 1, dy, target, tx, ty, maxSteps);
+					jumpFrom(context, mover, tiles, maxDistance, current, -1, dy, target, tx, ty, maxSteps);
+				}
+			}
+		}
+		expandedCount = context.expandedCount;
+
+		if (trace != null) {
+			trace.record(SearchTrace.FINISH, target, (depth[target] == Integer.MAX_VALUE) ? -1 : depth[target]);
+		}
+
+		// since we've got an empty open list or we've run out of search
+		// there was no path.
+		if (depth[target] == Integer.MAX_VALUE) {
+			return false;
+		}
+
+		buildPath(parent, start, target, path);
+		return true;
+	}
+
+	/**
+	 * Jump from a tile in one direction and add the jump point found, if any,
+	 * to the open list
+	 *
+	 * @param context The context holding the working state of the search
+	 * @param mover The entity that will be moving along the path
+	 * @param tiles The plain tiles of the mover's movement layer
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param current The index of the tile being expanded
+	 * @param dx The x direction of the jump
+	 * @param dy The y direction of the jump
+	 * @param target The index of the target tile
+	 * @param tx The x coordinate of the target location
+	 * @param ty The y coordinate of the target location
+	 * @param maxSteps The number of steps the budget left allows
+	 */
+	private void jumpFrom(SearchContext context, Mover mover, PlainTiles tiles, int maxDistance, int current,
+			int dx, int dy, int target, int tx, int ty, int maxSteps) {
+		int cx = current % width;
+		int cy = current / width;
+		int jumpPoint = jump(tiles, cx, cy, dx, dy, target, maxSteps);
+		if (jumpPoint < 0) {
+			return;
+		}
+
+		// every tile before the jump point is plain and costs the uniform cost
+		int jx = jumpPoint % width;
+		int jy = jumpPoint / width;
+		int steps = Math.max(Math.abs(jx - cx), Math.abs(jy - cy));
+		int[] depth = context.depth;
+		context.touch(jumpPoint);
+		context.neighbourCount++;
+		int nextStepCost = depth[current] + (steps - 1) * tiles.uniformCost + tiles.layer[jumpPoint];
+		if (nextStepCost > maxDistance || nextStepCost >= depth[jumpPoint]) {
+			return;
+		}
+		if (context.state[jumpPoint] == SearchContext.CLOSED) {
+			context.reopenedCount++;
+		}
+		if (context.trace != null) {
+			context.trace.record((depth[jumpPoint] == Integer.MAX_VALUE) ? SearchTrace.PUSH : SearchTrace.RELAX, jumpPoint, nextStepCost);
+		}
+		depth[jumpPoint] = nextStepCost;
+		context.parent[jumpPoint] = current;
+		context.addToOpen(jumpPoint, context.heuristic.getCost(mover, jx, jy, tx, ty));
+	}
+
+	/**
+	 * Move from a tile in a straight line until reaching a jump point: the
+	 * target, a tile that is not plain, or a tile where a path may have to
+	 * turn because of a blocked tile next to it.
+	 *
+	 * @param tiles The plain tiles of the mover's movement layer
+	 * @param x The x coordinate of the tile to jump from
+	 * @param y The y coordinate of the tile to jump from
+	 * @param dx The x direction of the jump
+	 * @param dy The y direction of the jump
+	 * @param target The index of the target tile
+	 * @param maxSteps The highest number of steps to take
+	 * @return The index of the jump point, or -1 if there is none
+	 */
+	private int jump(PlainTiles tiles, int x, int y, int dx, int dy, int target, int maxSteps) {
+		int[] layer = tiles.layer;
+		for (int step=1;step<=maxSteps;step++) {
+			int fromX = x;
+			int fromY = y;
+			x += dx;
+			y += dy;
+			if (!isValidLocation(layer, x, y)) {
+				return -1;
+			}
+			if (dx != 0 && dy != 0 && (!isValidLocation(layer, x, fromY) || !isValidLocation(layer, fromX, y))) {
+				return -1;
+			}
+
+			int index = y * width + x;
+			if (index == target || !tiles.plain[index]) {
+				return index;
+			}
+
+			if (dx != 0 && dy != 0) {
+				// a diagonal jump stops where a straight jump would find something
+				if (jump(tiles, x, y, dx, 0, target, maxSteps - step) >= 0
+						|| jump(tiles, x, y, 0, dy, target, maxSteps - step) >= 0) {
+					return index;
+				}
+			} else if (dx != 0) {
+				// a side opens up where it was blocked behind us
+				if ((isValidLocation(layer, x, y - 1) && !isValidLocation(layer, x - dx, y - 1))
+						|| (isValidLocation(layer, x, y + 1) && !isValidLocation(layer, x - dx, y + 1))) {
+					return index;
+				}
+			} else {
+				if ((isValidLocation(layer, x - 1, y) && !isValidLocation(layer, x - 1, y - dy))
+						|| (isValidLocation(layer, x + 1, y) && !isValidLocation(layer, x + 1, y - dy))) {
+					return index;
+				}
+				// without diagonals a vertical jump stops where a horizontal one would find something
+				if (!allowDiagMovement && (jump(tiles, x, y, 1, 0, target, maxSteps - step) >= 0
+						|| jump(tiles, x, y, -1, 0, target, maxSteps - step) >= 0)) {
+					return index;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Fill a path by walking the jump points back from the target to the
+	 * start, adding the tiles jumped over between each of them.
+	 *
+	 * @see GridPathFinder#buildPath(int[], int, int, Path)
+	 */
+	protected void buildPath(int[] parent, int start, int target, Path path) {
+		int length = 1;
+		for (int tile = target; tile != start; tile = parent[tile]) {
+			int from = parent[tile];
+			length += Math.max(Math.abs(tile % width - from % width), Math.abs(tile / width - from / width));
+		}
+		path.setLength(length);
+
+		int index = length - 1;
+		for (int tile = target; tile != start; tile = parent[tile]) {
+			int x = tile % width;
+			int y = tile / width;
+			int fromX = parent[tile] % width;
+			int fromY = parent[tile] / width;
+			int dx = (fromX > x) ? 1 : ((fromX < x) ? -1 : 0);
+			int dy = (fromY > y) ? 1 : ((fromY < y) ? -1 : 0);
+			while (x != fromX || y != fromY) {
+				path.setStep(index, x, y);
+				index--;
+				x += dx;
+				y += dy;
+			}
+		}
+		path.setStep(0, start % width, start / width);
+	}
+}
@@ -0,0 +1,412 @@
+package com.qylla.util.pathfinding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+
+/**
+ * A heuristic made from the exact distances of a few landmark tiles, also
+ * known as ALT. If the cost from a landmark L to the target t is d(L,t) and
+ * to a tile v is d(L,v), the cost from v to t is at least d(L,t) - d(L,v),
+ * and likewise at least d(v,L) - d(t,L). On maps with walls, rivers and
+ * chokepoints these bounds follow the way round the obstacles, where the
+ * Manhattan or octile distance only sees the straight line, so the search
+ * stops flooding the dead ends it can't get out of.
+ *
+ * The landmarks are picked one after the other, each the tile farthest
+ * from those picked before it, which puts them along the edges and in the
+ * far corners of the largest open region of the map. Their distance fields
+ * are then worked out in parallel by {@link DistanceFields}. The distances
+ * are kept in a single int array holding the distance of every landmark
+ * for the first tile, then for the second, so that a lookup reads two
+ * short runs of it.
+ * Steps are charged the cost of the tile entered, so the cost back to a
+ * landmark is worked out from the cost from it, d(v,L) = d(L,v) - cost(v)
+ * + cost(L), and only the fields from the landmarks are stored.
+ *
+ * The bound of every landmark is consistent, and so is the highest of them
+ * and of the heuristic the finder had before, which is used as well. The
+ * landmarks only hold for the movement type they were worked out for, and
+ * for the map as it was then: searches for other movement types get the
+ * finder's previous heuristic, and so does every search once the movement
+ * layers of the finder change, see {@link GridPathFinder#getLayerRevision()},
+ * until the landmarks are worked out again. A tile getting cheaper could
+ * otherwise make the estimates too high and the paths found too dear.
+ * Tiles the landmarks can't reach, those of the smaller regions, get the
+ * previous heuristic too.
+ *
+ * Working out the landmarks takes two Dijkstra searches over the whole map
+ * per landmark, so it is meant to be done once per map, written out with
+ * {@link #write(DataOutputStream)} and read back with
+ * {@link #read(DataInputStream, GridPathFinder, Mover)} when the map is
+ * loaded, or used straight from a file mapped into memory with
+ * {@link #read(ByteBuffer, GridPathFinder, Mover)}, see
+ * {@link PreprocessingCache}.
+ *
+ * @author Cesar Ramirez
+ */
+public class LandmarkHeuristic implements AStarHeuristic {
+	/** The version of the format written by {@link #write(DataOutputStream)} */
+	private static final int FORMAT_VERSION = 1;
+
+	/** The width of the map in tiles */
+	private int width;
+	/** The height of the map in tiles */
+	private int height;
+	/** The index of the movement layer the landmarks were worked out for */
+	private int layerIndex;
+	/** The cost of moving into each tile for that movement type */
+	private int[] layer;
+	/** The heuristic used for other movement types, unreached tiles and once the map changed */
+	private AStarHeuristic fallback;
+	/** The finder the landmarks were worked out for */
+	private GridPathFinder finder;
+	/** The revision of the finder's movement layers the landmarks were worked out from */
+	private int layerRevision;
+	/** The tile index of each landmark */
+	private int[] landmarks;
+	/** The distance from every landmark to every tile, by tile and then by landmark */
+	private IntBuffer distances;
+
+	/**
+	 * Pick the landmarks of a map and work out their distances. The finder
+	 * keeps its heuristic, pass this one to
+	 * {@link GridPathFinder#setHeuristic(AStarHeuristic)} to search with it.
+	 *
+	 * @param finder The finder holding the map data, its heuristic is used
+	 * for the tiles the landmarks don't cover
+	 * @param mover The entity the landmarks are worked out for, standing for
+	 * every mover of its movement type
+	 * @param count The number of landmarks to pick, fewer are picked if the
+	 * map runs out of tiles to put them on
+	 * @param pool The pool to work out the distance fields on
+	 */
+	public LandmarkHeuristic(GridPathFinder finder, Mover mover, int count, ForkJoinPool pool) {
+		this(finder, mover);
+		landmarks = selectLandmarks(finder, mover, count);
+
+		int[] lx = new int[landmarks.length];
+		int[] ly = new int[landmarks.length];
+		for (int i=0;i<landmarks.length;i++) {
+			lx[i] = landmarks[i] % width;
+			ly[i] = landmarks[i] / width;
+		}
+		int[][] fields = new DistanceFields(finder, pool).findFields(mover, GridPathFinder.UNREACHABLE, lx, ly);
+
+		int size = width * height;
+		int[] interleaved = new int[size * landmarks.length];
+		for (int l=0;l<landmarks.length;l++) {
+			int[] field = fields[l];
+			for (int tile=0;tile<size;tile++) {
+				interleaved[tile * landmarks.length + l] = field[tile];
+			}
+		}
+		distances = IntBuffer.wrap(interleaved);
+	}
+
+	/**
+	 * Create a heuristic without landmarks for a finder
+	 *
+	 * @param finder The finder holding the map data
+	 * @param mover The entity the landmarks are for
+	 */
+	private LandmarkHeuristic(GridPathFinder finder, Mover mover) {
+		this.width = finder.width;
+		this.height = finder.height;
+		this.layerIndex = GridPathFinder.getLayerIndex(mover);
+		this.layer = finder.getLayer(mover);
+		this.finder = finder;
+		this.layerRevision = finder.getLayerRevision();
+		// landmarks worked out again for a finder already using some fall back on what those did
+		this.fallback = (finder.heuristic instanceof LandmarkHeuristic) ?
+				((LandmarkHeuristic) finder.heuristic).fallback : finder.heuristic;
+	}
+
+	/**
+	 * Pick the landmarks, each the tile with the highest cost from the
+	 * nearest of those picked before it. The first one is the farthest tile
+	 * from a tile of the largest region of the map, so the landmarks don't
+	 * end up in a pocket walled off from the rest.
+	 *
+	 * @param finder The finder holding the map data
+	 * @param mover The entity the landmarks are worked out for
+	 * @param count The number of landmarks to pick
+	 * @return The tile indexes of the landmarks picked
+	 */
+	private int[] selectLandmarks(GridPathFinder finder, Mover mover, int count) {
+		int size = width * height;
+		int seed = findLargestRegion();
+		if (seed < 0 || count <= 0) {
+			return new int[0];
+		}
+
+		int[] sx = {seed % width};
+		int[] sy = {seed / width};
+		int[] picked = new int[count];
+		int pickedCount = 0;
+		int[] nearest = new int[size];
+		SearchContext context = finder.acquireContext();
+		try {
+			while (pickedCount < count) {
+				// one search from all the landmarks so far gives the cost from the nearest
+				finder.findDistances(context, mover, GridPathFinder.UNREACHABLE, sx, sy, nearest, null);
+				int farthest = -1;
+				for (int tile=0;tile<size;tile++) {
+					if (nearest[tile] != GridPathFinder.UNREACHABLE && nearest[tile] > 0
+							&& (farthest < 0 || nearest[tile] > nearest[farthest])) {
+						farthest = tile;
+					}
+				}
+				if (farthest < 0) {
+					break;
+				}
+
+				picked[pickedCount] = farthest;
+				pickedCount++;
+				sx = new int[pickedCount];
+				sy = new int[pickedCount];
+				for (int i=0;i<pickedCount;i++) {
+					sx[i] = picked[i] % width;
+					sy[i] = picked[i] / width;
+				}
+			}
+		} finally {
+			finder.releaseContext(context);
+		}
+
+		int[] result = new int[pickedCount];
+		System.arraycopy(picked, 0, result, 0, pickedCount);
+		return result;
+	}
+
+	/**
+	 * Find the largest region of open tiles connected to each other. Diagonal
+	 * steps need both of the straight tiles next to them to be open, so
+	 * straight steps alone connect the same tiles.
+	 *
+	 * @return The index of a tile of the largest region, or -1 if every tile is blocked
+	 */
+	private int findLargestRegion() {
+		int size = width * height;
+		boolean[] seen = new boolean[size];
+		int[] queue = new int[size];
+		int largest = -1;
+		int largestSize = 0;
+		for (int first=0;first<size;first++) {
+			if (seen[first] || layer[first] == GridPathFinder.BLOCKED) {
+				continue;
+			}
+			// flood the region of the tile, the queue ends up holding all of it
+			seen[first] = true;
+			queue[0] = first;
+			int tail = 1;
+			for (int head=0;head<tail;head++) {
+				int x = queue[head] % width;
+				int y = queue[head] / width;
+				for (int i=0;i<4;i++) {
+					int nx = x + GridPathFinder.DX[i];
+					int ny = y + GridPathFinder.DY[i];
+					if ((nx < 0) || (ny < 0) || (nx >= width) || (ny >= height)) {
+						continue;
+					}
+					int neighbour = ny * width + nx;
+					if (!seen[neighbour] && layer[neighbour] != GridPathFinder.BLOCKED) {
+						seen[neighbour] = true;
+						queue[tail] = neighbour;
+						tail++;
+					}
+				}
+			}
+			if (tail > largestSize) {
+				largest = first;
+				largestSize = tail;
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * @see AStarHeuristic#getCost(Mover, int, int, int, int)
+	 */
+	public float getCost(Mover mover, int x, int y, int tx, int ty) {
+		float estimate = fallback.getCost(mover, x, y, tx, ty);
+		if (GridPathFinder.getLayerIndex(mover) != layerIndex || finder.getLayerRevision() != layerRevision) {
+			return estimate;
+		}
+
+		int count = landmarks.length;
+		int from = y * width + x;
+		int to = ty * width + tx;
+		int fromCost = layer[from];
+		int toCost = layer[to];
+		from *= count;
+		to *= count;
+		int bound = 0;
+		for (int l=0;l<count;l++) {
+			int toTile = distances.get(from + l);
+			int toTarget = distances.get(to + l);
+			if (toTile == GridPathFinder.UNREACHABLE || toTarget == GridPathFinder.UNREACHABLE) {
+				continue;
+			}
+			// past the landmark on the way to the target, or past the target on the way to the landmark
+			bound = Math.max(bound, toTarget - toTile);
+			bound = Math.max(bound, (toTile - fromCost) - (toTarget - toCost));
+		}
+		return Math.max(estimate, bound);
+	}
+
+	/**
+	 * Get the number of landmarks
+	 *
+	 * @return The number of landmarks picked
+	 */
+	public int getLandmarkCount() {
+		return landmarks.length;
+	}
+
+	/**
+	 * Get the x coordinate of a landmark
+	 *
+	 * @param landmark The index of the landmark
+	 * @return The x coordinate of the landmark
+	 */
+	public int getLandmarkX(int landmark) {
+		return landmarks[landmark] % width;
+	}
+
+	/**
+	 * Get the y coordinate of a landmark
+	 *
+	 * @param landmark The index of the landmark
+	 * @return The y coordinate of the landmark
+	 */
+	public int getLandmarkY(int landmark) {
+		return landmarks[landmark] / width;
+	}
+
+	/**
+	 * Get the cost from a landmark to a tile
+	 *
+	 * @param landmark The index of the landmark
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @return The cost of the cheapest path from the landmark to the tile, or
+	 * {@link GridPathFinder#UNREACHABLE} if there is none
+	 */
+	public int getDistance(int landmark, int x, int y) {
+		return distances.get((y * width + x) * landmarks.length + landmark);
+	}
+
+	/**
+	 * Write the landmarks and their distances to a stream, for
+	 * {@link #read(DataInputStream, GridPathFinder, Mover)} or
+	 * {@link #read(ByteBuffer, GridPathFinder, Mover)} to read back. Every
+	 * value is a big endian int.
+	 *
+	 * @param out The stream to write to
+	 * @throws IOException If the stream fails
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(layerIndex);
+		out.writeInt(landmarks.length);
+		for (int i=0;i<landmarks.length;i++) {
+			out.writeInt(landmarks[i]);
+		}
+		int length = width * height * landmarks.length;
+		for (int i=0;i<length;i++) {
+			out.writeInt(distances.get(i));
+		}
+	}
+
+	/**
+	 * Read landmarks written by {@link #write(DataOutputStream)}. They must
+	 * have been worked out on the same map with the same diagonal movement
+	 * setting, only the size of the map and the movement type are checked.
+	 *
+	 * @param in The stream to read from
+	 * @param finder The finder the landmarks are for, as for the constructor
+	 * @param mover The entity the landmarks were worked out for
+	 * @return The heuristic
+	 * @throws IOException If the stream fails or holds landmarks for another
+	 * map size or movement type
+	 */
+	public static LandmarkHeuristic read(DataInputStream in, GridPathFinder finder, Mover mover) throws IOException {
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(finder, mover);
+		heuristic.checkHeader(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+		int count = in.readInt();
+		heuristic.landmarks = new int[count];
+		for (int i=0;i<count;i++) {
+			heuristic.landmarks[i] = in.readInt();
+		}
+		int[] distances = new int[heuristic.width * heuristic.height * count];
+		for (int i=0;i<distances.length;i++) {
+			distances[i] = in.readInt();
+		}
+		heuristic.distances = IntBuffer.wrap(distances);
+		return heuristic;
+	}
+
+	/**
+	 * Use landmarks written by {@link #write(DataOutputStream)} straight from
+	 * a buffer, usually a file mapped into memory. The distances are not
+	 * copied, they are read from the buffer by every search, so it must not
+	 * change while the heuristic is in use. The buffer is left positioned
+	 * after the landmarks.
+	 *
+	 * @param buffer The buffer holding the landmarks from its position on, in
+	 * big endian order
+	 * @param finder The finder the landmarks are for, as for the constructor
+	 * @param mover The entity the landmarks were worked out for
+	 * @return The heuristic
+	 * @throws IOException If the buffer is too short or holds landmarks for
+	 * another map size or movement type
+	 */
+	public static LandmarkHeuristic read(ByteBuffer buffer, GridPathFinder finder, Mover mover) throws IOException {
+		IntBuffer in = buffer.slice().order(buffer.order()).asIntBuffer();
+		if (in.remaining() < 5) {
+			throw new IOException("Landmark buffer too short");
+		}
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(finder, mover);
+		heuristic.checkHeader(in.get(), in.get(), in.get(), in.get());
+		int count = in.get();
+		int length = heuristic.width * heuristic.height * count;
+		if (count < 0 || in.remaining() < count + length) {
+			throw new IOException("Landmark buffer too short for " + count + " landmarks");
+		}
+		heuristic.landmarks = new int[count];
+		in.get(heuristic.landmarks);
+		// a view of the rest of the buffer, the distances stay where they are
+		in.limit(in.position() + length);
+		heuristic.distances = in.slice();
+		buffer.position(buffer.position() + (5 + count + length) * 4);
+		return heuristic;
+	}
+
+	/**
+	 * Check the header of landmarks being read against the map
+	 *
+	 * @param version The version of the format the landmarks were written in
+	 * @param width The width of the map the landmarks were worked out on
+	 * @param height The height of the map the landmarks were worked out on
+	 * @param layerIndex The movement layer the landmarks were worked out for
+	 * @throws IOException If the landmarks can't be used with this heuristic's map
+	 */
+	private void checkHeader(int version, int width, int height, int layerIndex) throws IOException {
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unknown landmark format " + version);
+		}
+		if (width != this.width || height != this.height || layerIndex != this.layerIndex) {
+			throw new IOException("Landmarks for a " + width + "x" + height + " map and movement layer " + layerIndex
+					+ " can't be used for a " + this.width + "x" + this.height + " map and movement layer " + this.layerIndex);
+		}
+	}
+}
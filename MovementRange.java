@@ -0,0 +1,232 @@
+package com.qylla.util.pathfinding;
+
+/**
+ * The set of tiles a mover can reach from a starting location within its
+ * movement budget, together with the cost of reaching each of them.
+ * Membership is kept in a bitset and the tiles are also listed in the
+ * order they were reached, cheapest first, so both lookups and iteration
+ * are cheap. A range can be cleared and filled again without allocating.
+ *
+ * A range filled by a search also records the tile each tile was reached
+ * from, making it the shortest path tree of the search. The path to any
+ * tile in the range can then be read back in time proportional to its
+ * length, without searching again.
+ *
+ * @author Cesar Ramirez
+ */
+public class MovementRange {
+	/** The width of the map in tiles */
+	private int width;
+	/** The height of the map in tiles */
+	private int height;
+	/** One bit per tile, set for the tiles in the range */
+	private long[] reachable;
+	/** The cost of reaching each tile, only meaningful for tiles in the range */
+	private int[] costs;
+	/** The index of the tile each tile was reached from, only meaningful for tiles in the range */
+	private int[] parents;
+	/** The index of the tile the range was searched from, -1 if unknown */
+	private int start = -1;
+	/** The indexes of the tiles in the range, in the order they were added */
+	private int[] tiles;
+	/** The number of tiles in the range */
+	private int tileCount;
+
+	/**
+	 * Create an empty range
+	 *
+	 * @param width The width of the map in tiles
+	 * @param height The height of the map in tiles
+	 */
+	public MovementRange(int width, int height) {
+		this.width = width;
+		this.height = height;
+		reachable = new long[(width * height + 63) >> 6];
+		costs = new int[width * height];
+		parents = new int[width * height];
+		tiles = new int[64];
+	}
+
+	/**
+	 * Remove every tile from the range. This takes time proportional to the
+	 * number of tiles in the range, not to the size of the map.
+	 */
+	public void clear() {
+		for (int i=0;i<tileCount;i++) {
+			reachable[tiles[i] >> 6] = 0;
+		}
+		tileCount = 0;
+		start = -1;
+	}
+
+	/**
+	 * Set the tile the range was searched from, which is the root of its
+	 * shortest path tree
+	 *
+	 * @param x The x coordinate of the start tile
+	 * @param y The y coordinate of the start tile
+	 */
+	public void setStart(int x, int y) {
+		start = y * width + x;
+	}
+
+	/**
+	 * Add a tile to the range without recording how it was reached
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @param cost The cost of reaching the tile
+	 */
+	public void add(int x, int y, int cost) {
+		add(x, y, cost, -1);
+	}
+
+	/**
+	 * Add a tile to the range
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @param cost The cost of reaching the tile
+	 * @param parent The index, y * width + x, of the tile this tile is reached
+	 * from, -1 for the start or if it is unknown
+	 */
+	public void add(int x, int y, int cost, int parent) {
+		int index = y * width + x;
+		if (tileCount == tiles.length) {
+			int[] grown = new int[tileCount * 2];
+			System.arraycopy(tiles, 0, grown, 0, tileCount);
+			tiles = grown;
+		}
+		tiles[tileCount] = index;
+		tileCount++;
+		reachable[index >> 6] |= 1L << index;
+		costs[index] = cost;
+		parents[index] = parent;
+	}
+
+	/**
+	 * Get the path from the start of the range to a tile in it
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @return The cheapest path to the tile, or null if the tile is not in the
+	 * range or the range does not know how its tiles were reached
+	 */
+	public Path getPath(int x, int y) {
+		Path path = new Path();
+		if (!getPath(x, y, path)) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * Get the path from the start of the range to a tile in it, writing it
+	 * into a path supplied by the caller. This follows the recorded parents
+	 * back to the start, it does not search.
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @param path The path to overwrite with the steps found
+	 * @return True if the path was found, false if the tile is not in the range
+	 * or the range does not know how its tiles were reached
+	 */
+	public boolean getPath(int x, int y, Path path) {
+		if (!contains(x, y) || start < 0) {
+			return false;
+		}
+
+		int length = 1;
+		int tile = y * width + x;
+		for (;tile != start;tile = parents[tile]) {
+			if (parents[tile] < 0) {
+				return false;
+			}
+			length++;
+		}
+
+		path.setLength(length);
+		tile = y * width + x;
+		for (int i=length - 1;i>=0;i--) {
+			path.setStep(i, tile % width, tile / width);
+			tile = parents[tile];
+		}
+		return true;
+	}
+
+	/**
+	 * Check if a tile is in the range
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @return True if the tile can be reached
+	 */
+	public boolean contains(int x, int y) {
+		if ((x < 0) || (y < 0) || (x >= width) || (y >= height)) {
+			return false;
+		}
+		int index = y * width + x;
+		return (reachable[index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Get the cost of reaching a tile
+	 *
+	 * @param x The x coordinate of the tile
+	 * @param y The y coordinate of the tile
+	 * @return The cost of reaching the tile, or -1 if it is not in the range
+	 */
+	public int getCost(int x, int y) {
+		if (!contains(x, y)) {
+			return -1;
+		}
+		return costs[y * width + x];
+	}
+
+	/**
+	 * Get the number of tiles in the range
+	 *
+	 * @return The number of tiles that can be reached
+	 */
+	public int getTileCount() {
+		return tileCount;
+	}
+
+	/**
+	 * Get the x coordinate of a tile in the range
+	 *
+	 * @param index The position of the tile in the range, between 0 and getTileCount()
+	 * @return The x coordinate of the tile
+	 */
+	public int getX(int index) {
+		return tiles[index] % width;
+	}
+
+	/**
+	 * Get the y coordinate of a tile in the range
+	 *
+	 * @param index The position of the tile in the range, between 0 and getTileCount()
+	 * @return The y coordinate of the tile
+	 */
+	public int getY(int index) {
+		return tiles[index] / width;
+	}
+
+	/**
+	 * Get the width of the map the range belongs to
+	 *
+	 * @return The width of the map in tiles
+	 */
+	public int getWidthInTiles() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the map the range belongs to
+	 *
+	 * @return The height of the map in tiles
+	 */
+	public int getHeightInTiles() {
+		return height;
+	}
+}
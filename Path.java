@@ -1,6 +1,6 @@
 package com.qylla.util.pathfinding;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A path determined by some path finding algorithm. A series of steps from
@@ -10,8 +10,19 @@ import java.util.ArrayList;
  * @author Cesar Ramirez
  */
 public class Path {
-	/** The list of steps building up this path */
-	private ArrayList<Step> steps = new ArrayList<Step>();
+	/** Paths at least this long build an index to answer {@link #contains(int, int)} */
+	private static final int INDEX_THRESHOLD = 8;
+	
+	/** The steps building up this path, each packed as (x << 16) | y */
+	private int[] steps = new int[16];
+	/** The slot of the first step in the buffer, the free slots before it make prepending cheap */
+	private int head = 8;
+	/** The number of steps in this path */
+	private int length;
+	/** An open addressing table of step index + 1 by packed location, 0 for an empty slot */
+	private int[] index;
+	/** True if the index matches the steps, any change to the path invalidates it */
+	private boolean indexed;
 	
 	/**
 	 * Create an empty path
@@ -26,18 +37,20 @@ public class Path {
 	 * @return The number of steps in this path
 	 */
 	public int getLength() {
-		return steps.size();
+		return length;
 	}
 	
 	/**
-	 * Get the step at a given index in the path
+	 * Get the step at a given index in the path. This creates a new step
+	 * each time, loops over the path should use {@link #getX(int)} and
+	 * {@link #getY(int)} or a {@link StepCursor} instead.
 	 * 
 	 * @param index The index of the step to retrieve. Note this should
 	 * be >= 0 and < getLength();
 	 * @return The step information, the position on the map.
 	 */
 	public Step getStep(int index) {
-		return steps.get(index);
+		return new Step(getX(index), getY(index));
 	}
 	
 	/**
@@ -47,7 +60,7 @@ public class Path {
 	 * @return The x coordinate at the step
 	 */
 	public int getX(int index) {
-		return getStep(index).x;
+		return packed(index) >>> 16;
 	}
 
 	/**
@@ -57,7 +70,18 @@ public class Path {
 	 * @return The y coordinate at the step
 	 */
 	public int getY(int index) {
-		return getStep(index).y;
+		return packed(index) & 0xFFFF;
+	}
+	
+	/**
+	 * Get a cursor over the steps of this path
+	 * 
+	 * @return A new cursor placed before the first step
+	 */
+	public StepCursor cursor() {
+		StepCursor cursor = new StepCursor();
+		cursor.reset(this);
+		return cursor;
 	}
 	
 	/**
@@ -67,28 +91,266 @@ public class Path {
 	 * @param y The y coordinate of the new step
 	 */
 	public void appendStep(int x, int y) {
-		steps.add(new Step(x,y));
+		if (head + length == steps.length) {
+			makeRoom(length + 1);
+		}
+		steps[head + length] = pack(x, y);
+		length++;
+		indexed = false;
 	}
 
 	/**
-	 * Prepend a step to the path.  
+	 * Prepend a step to the path. The free slots kept before the first
+	 * step make this as cheap as appending.
 	 * 
 	 * @param x The x coordinate of the new step
 	 * @param y The y coordinate of the new step
 	 */
 	public void prependStep(int x, int y) {
-		steps.add(0, new Step(x, y));
+		if (head == 0) {
+			makeRoom(length + 1);
+		}
+		head--;
+		steps[head] = pack(x, y);
+		length++;
+		indexed = false;
+	}
+	
+	/**
+	 * Overwrite this path with the steps of another
+	 * 
+	 * @param path The path to copy
+	 */
+	public void set(Path path) {
+		if (path == this) {
+			return;
+		}
+		length = 0;
+		makeRoom(path.length);
+		System.arraycopy(path.steps, path.head, steps, head, path.length);
+		length = path.length;
+		indexed = false;
+	}
+	
+	/**
+	 * Remove all the steps from the path, keeping its storage for reuse
+	 */
+	public void clear() {
+		length = 0;
+		head = steps.length / 2;
+		indexed = false;
+	}
+	
+	/**
+	 * Resize the path to the given number of steps. Steps added this way
+	 * must be given their location with {@link #setStep(int, int, int)}.
+	 * Path finders use this to fill a path from the back without moving
+	 * steps around.
+	 * 
+	 * @param length The new number of steps in the path
+	 */
+	public void setLength(int length) {
+		if (head + length > steps.length) {
+			makeRoom(length);
+		}
+		this.length = length;
+		indexed = false;
+	}
+	
+	/**
+	 * Change the location of the step at the given index
+	 * 
+	 * @param index The index of the step to change
+	 * @param x The new x coordinate of the step
+	 * @param y The new y coordinate of the step
+	 */
+	public void setStep(int index, int x, int y) {
+		packed(index);
+		steps[head + index] = pack(x, y);
+		indexed = false;
 	}
 	
 	/**
-	 * Check if this path contains the given step
+	 * Check if this path contains the given step. Long paths build an index
+	 * the first time they are asked, so checking every tile of the map
+	 * against the same path only costs one lookup per tile.
 	 * 
 	 * @param x The x coordinate of the step to check for
 	 * @param y The y coordinate of the step to check for
 	 * @return True if the path contains the given step
 	 */
 	public boolean contains(int x, int y) {
-		return steps.contains(new Step(x,y));
+		int step = pack(x, y);
+		if (length < INDEX_THRESHOLD) {
+			for (int i = head; i < head + length; i++) {
+				if (steps[i] == step) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		if (!indexed) {
+			buildIndex();
+		}
+		int mask = index.length - 1;
+		for (int slot = hash(step) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+			if (steps[head + index[slot] - 1] == step) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Fill the index of steps by location
+	 */
+	private void buildIndex() {
+		// keep the table at most half full so probes stay short
+		int capacity = Integer.highestOneBit(length) * 4;
+		if (index == null || index.length < capacity || index.length > capacity * 4) {
+			index = new int[capacity];
+		} else {
+			Arrays.fill(index, 0);
+		}
+		int mask = index.length - 1;
+		for (int i = 0; i < length; i++) {
+			int slot = hash(steps[head + i]) & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = i + 1;
+		}
+		indexed = true;
+	}
+	
+	/**
+	 * Spread the bits of a packed location over the whole int, neighbouring
+	 * tiles would otherwise fill neighbouring slots of the index
+	 * 
+	 * @param step The packed location
+	 * @return The hash of the location
+	 */
+	private static int hash(int step) {
+		int h = step * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Get the packed location of the step at the given index
+	 * 
+	 * @param index The index of the step
+	 * @return The packed location of the step
+	 */
+	private int packed(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Step " + index + " of a path with " + length + " steps");
+		}
+		return steps[head + index];
+	}
+	
+	/**
+	 * Move the steps to the middle of the buffer, leaving free room on both
+	 * sides. The buffer is only replaced if it is less than twice as big as
+	 * needed, so a path reused for many searches settles on one buffer.
+	 * 
+	 * @param capacity The number of steps needed
+	 */
+	private void makeRoom(int capacity) {
+		int[] moved = steps;
+		if (capacity * 2 > steps.length) {
+			moved = new int[Math.max(capacity, steps.length) * 2];
+		}
+		int newHead = (moved.length - capacity) / 2;
+		System.arraycopy(steps, head, moved, newHead, length);
+		steps = moved;
+		head = newHead;
+	}
+	
+	/**
+	 * Pack a location into a single int
+	 * 
+	 * @param x The x coordinate, must fit in 16 bits
+	 * @param y The y coordinate, must fit in 16 bits
+	 * @return The packed location
+	 */
+	private static int pack(int x, int y) {
+		return (x << 16) | (y & 0xFFFF);
+	}
+	
+	/**
+	 * A cursor walking over the steps of a path without creating a step
+	 * object for each of them. A cursor can be kept and reset to walk
+	 * over other paths, the path must not change while it is walked.
+	 * 
+	 * <pre>
+	 * StepCursor cursor = path.cursor();
+	 * while (cursor.next()) {
+	 *     draw(cursor.getX(), cursor.getY());
+	 * }
+	 * </pre>
+	 * 
+	 * @author Cesar Ramirez
+	 */
+	public static class StepCursor {
+		/** The path walked over */
+		private Path path;
+		/** The index of the current step, -1 before the first */
+		private int index;
+		/** The packed location of the current step */
+		private int step;
+		
+		/**
+		 * Place the cursor before the first step of a path
+		 * 
+		 * @param path The path to walk over
+		 */
+		public void reset(Path path) {
+			this.path = path;
+			this.index = -1;
+		}
+		
+		/**
+		 * Move to the next step
+		 * 
+		 * @return True if there is a next step, false at the end of the path
+		 */
+		public boolean next() {
+			if (index + 1 >= path.length) {
+				index = path.length;
+				return false;
+			}
+			index++;
+			step = path.steps[path.head + index];
+			return true;
+		}
+		
+		/**
+		 * Get the index of the current step in the path
+		 * 
+		 * @return The index of the current step
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
+		/**
+		 * Get the x coordinate of the current step
+		 * 
+		 * @return The x coordinate of the current step
+		 */
+		public int getX() {
+			return step >>> 16;
+		}
+		
+		/**
+		 * Get the y coordinate of the current step
+		 * 
+		 * @return The y coordinate of the current step
+		 */
+		public int getY() {
+			return step & 0xFFFF;
+		}
 	}
 	
 	/**
@@ -135,7 +397,7 @@ public class Path {
 		 * @see Object#hashCode()
 		 */
 		public int hashCode() {
-			return x*y;
+			return (x << 16) ^ y;
 		}
 
 		/**
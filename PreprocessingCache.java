@@ -0,0 +1,245 @@
+package com.qylla.util.pathfinding;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+
+import com.qylla.util.pathfinding.interfaces.Mover;
+
+/**
+ * A directory of files holding the work done ahead of time for each map,
+ * so that it is done once per map and not every time the game starts.
+ * Every file starts with a header holding a hash of the movement layer it
+ * was worked out from, see {@link #hashLayer(GridPathFinder, Mover)}. When
+ * the map is edited the hash no longer matches and the work is done again
+ * and written over the old file.
+ *
+ * Files are mapped into memory rather than read, so loading one costs no
+ * more than checking its header: the data is paged in by the system as
+ * the searches touch it and is never copied onto the heap. Mapped files
+ * don't count towards the heap of the application and are shared by every
+ * process using the same map.
+ *
+ * A file that can't be read is treated as missing, and a file that can't
+ * be written is skipped, so the cache never stops the work being done.
+ *
+ * @author Cesar Ramirez
+ */
+public class PreprocessingCache {
+	/** The first int of every file, "QPC1" in ASCII */
+	private static final int MAGIC = 0x51504331;
+	/** The version of the header written by this class */
+	private static final int FORMAT_VERSION = 1;
+	/** The size of the header in bytes, magic, version and hash */
+	private static final int HEADER_SIZE = 16;
+
+	/** The directory the files are kept in */
+	private File directory;
+
+	/**
+	 * Create a cache
+	 *
+	 * @param directory The directory to keep the files in, created when the
+	 * first file is written
+	 */
+	public PreprocessingCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Get the landmark heuristic of a map, mapping it from the cache if it
+	 * was worked out for the map as it is now, or working it out and writing
+	 * it to the cache if not
+	 *
+	 * @param name The name of the map, used to name the file. Maps with the
+	 * same name share a file and overwrite each other.
+	 * @param finder The finder holding the map data
+	 * @param mover The entity the landmarks are for, standing for every
+	 * mover of its movement type
+	 * @param count The number of landmarks to pick
+	 * @param pool The pool to work out the distance fields on
+	 * @return The heuristic
+	 * @see LandmarkHeuristic#LandmarkHeuristic(GridPathFinder, Mover, int, ForkJoinPool)
+	 */
+	public LandmarkHeuristic getLandmarks(String name, GridPathFinder finder, Mover mover, int count, ForkJoinPool pool) {
+		long hash = hashLayer(finder, mover);
+		File file = new File(directory, name + ".landmarks" + count + "-" + GridPathFinder.getLayerIndex(mover));
+
+		ByteBuffer buffer = map(file, hash);
+		if (buffer != null) {
+			try {
+				return LandmarkHeuristic.read(buffer, finder, mover);
+			} catch (IOException e) {
+				// cut short or written by an older version, work the landmarks out again
+			}
+		}
+
+		LandmarkHeuristic landmarks = new LandmarkHeuristic(finder, mover, count, pool);
+		DataOutputStream out = begin(file, hash);
+		if (out != null) {
+			boolean complete = false;
+			try {
+				landmarks.write(out);
+				complete = true;
+			} catch (IOException e) {
+				// the file is dropped, the landmarks are worked out again next time
+			}
+			commit(file, out, complete);
+		}
+		return landmarks;
+	}
+
+	/**
+	 * Work out the hash of the movement layer of a mover, the cost of every
+	 * tile, BLOCKED for the tiles it can't enter, along with the size of the
+	 * map and the diagonal movement setting. This is 64 bit FNV-1a over the
+	 * values, so two maps of a pack getting the same hash is very unlikely.
+	 *
+	 * @param finder The finder holding the map data
+	 * @param mover The mover to hash the movement layer of
+	 * @return The hash of the layer
+	 */
+	public static long hashLayer(GridPathFinder finder, Mover mover) {
+		int[] layer = finder.getLayer(mover);
+		long hash = 0xcbf29ce484222325L;
+		hash = hashInt(hash, finder.width);
+		hash = hashInt(hash, finder.height);
+		hash = hashInt(hash, finder.allowDiagMovement ? 1 : 0);
+		for (int i=0;i<layer.length;i++) {
+			hash = hashInt(hash, layer[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Add an int to an FNV-1a hash, one byte at a time
+	 *
+	 * @param hash The hash so far
+	 * @param value The value to add
+	 * @return The new hash
+	 */
+	private static long hashInt(long hash, int value) {
+		for (int shift=0;shift<32;shift+=8) {
+			hash ^= (value >>> shift) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Map a file of the cache into memory and check its header
+	 *
+	 * @param file The file to map
+	 * @param hash The hash the header must hold
+	 * @return The data of the file positioned after the header, or null if
+	 * the file is missing, can't be read or was worked out from another map
+	 */
+	private ByteBuffer map(File file, long hash) {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+		RandomAccessFile input = null;
+		try {
+			input = new RandomAccessFile(file, "r");
+			// the mapping stays valid once the file is closed
+			MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getLong() != hash) {
+				return null;
+			}
+			return buffer;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			closeQuietly(input);
+		}
+	}
+
+	/**
+	 * Start writing a file of the cache. The data goes to a temporary file
+	 * that {@link #commit(File, DataOutputStream, boolean)} moves in place,
+	 * so other processes never map a file half written.
+	 *
+	 * @param file The file to write
+	 * @param hash The hash to write in the header
+	 * @return The stream to write the data to after the header, or null if
+	 * the file can't be written
+	 */
+	private DataOutputStream begin(File file, long hash) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			return null;
+		}
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getTemporaryFile(file))));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(hash);
+			return out;
+		} catch (IOException e) {
+			closeQuietly(out);
+			getTemporaryFile(file).delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Finish writing a file of the cache, replacing the old one
+	 *
+	 * @param file The file being written
+	 * @param out The stream returned by {@link #begin(File, long)}
+	 * @param complete False if writing the data failed and the file is to be dropped
+	 */
+	private void commit(File file, DataOutputStream out, boolean complete) {
+		File temporary = getTemporaryFile(file);
+		try {
+			out.close();
+		} catch (IOException e) {
+			complete = false;
+		}
+		if (!complete) {
+			temporary.delete();
+			return;
+		}
+		if (!temporary.renameTo(file)) {
+			// some file systems don't rename over an existing file
+			file.delete();
+			if (!temporary.renameTo(file)) {
+				temporary.delete();
+			}
+		}
+	}
+
+	/**
+	 * Get the file a file of the cache is written to before it is complete
+	 *
+	 * @param file The file of the cache
+	 * @return The temporary file next to it
+	 */
+	private static File getTemporaryFile(File file) {
+		return new File(file.getPath() + ".tmp");
+	}
+
+	/**
+	 * Close a file or stream, ignoring any failure
+	 *
+	 * @param closeable The file or stream to close, or null
+	 */
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// nothing was being written, or it is dropped anyway
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.qylla.util.pathfinding;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+
+/**
+ * The working state of one search over a grid: the depth, score, parent
+ * and list flags of every tile together with the open lists. A path finder
+ * only holds the map data, which never changes during a search, so any
+ * number of searches can run at the same time against one finder as long
+ * as each of them uses its own context.
+ *
+ * Tile data is reset lazily: starting a search moves the generation on and
+ * {@link #touch(int)} discards the data left by an older search the first
+ * time the tile is reached.
+ *
+ * @author Cesar Ramirez
+ */
+public class SearchContext {
+	/** The flag of a tile in the open list */
+	public static final byte OPEN = 1;
+	/** The flag of a tile in the closed list */
+	public static final byte CLOSED = 2;
+	/** The flag of a tile that is one of the targets of a multiple target search */
+	public static final byte TARGET = 4;
+
+	/** The cost of the best route found to each tile */
+	public int[] depth;
+	/** The score each tile is ordered by in the open list */
+	public float[] score;
+	/** The index of the tile each tile was reached from, -1 for the start */
+	public int[] parent;
+	/** The OPEN, CLOSED and TARGET flags of each tile */
+	public byte[] state;
+	/** The search generation the data of each tile belongs to */
+	public int[] generation;
+	/** The number of the current search */
+	public int searchGeneration;
+	/** The set of tiles that we do not yet consider fully searched */
+	public IndexHeap open;
+	/** The open list of range searches, whose costs are small integers */
+	public BucketQueue buckets;
+	/** The number of tiles expanded by the current search */
+	public int expandedCount;
+	/** The number of closed tiles the current search found a better route to and opened again */
+	public int reopenedCount;
+	/** The number of steps into neighbouring tiles the current search looked at */
+	public int neighbourCount;
+	/** The highest step cost the bucket queue can hold */
+	public int maxStepCost;
+	/** The heuristic of the finder read when the current search started */
+	public AStarHeuristic heuristic;
+	/** The trace the searches using this context record into, null to record nothing */
+	public SearchTrace trace;
+	/** The context of the backward half of bidirectional searches, null until one runs */
+	public SearchContext reverse;
+
+	/**
+	 * Create a search context
+	 *
+	 * @param size The number of tiles on the map
+	 * @param maxStepCost The highest cost of moving into a tile
+	 */
+	public SearchContext(int size, int maxStepCost) {
+		depth = new int[size];
+		score = new float[size];
+		parent = new int[size];
+		state = new byte[size];
+		generation = new int[size];
+		open = new IndexHeap(size);
+		buckets = new BucketQueue(maxStepCost);
+		this.maxStepCost = maxStepCost;
+	}
+
+	/**
+	 * Reset the search data for a new search
+	 */
+	public void startSearch() {
+		open.clear();
+		buckets.clear();
+		expandedCount = 0;
+		reopenedCount = 0;
+		neighbourCount = 0;
+		searchGeneration++;
+		if (searchGeneration == Integer.MAX_VALUE) {
+			// the stamps are about to wrap around, reset them all once
+			for (int i=0;i<generation.length;i++) {
+				generation[i] = 0;
+			}
+			searchGeneration = 1;
+		}
+	}
+
+	/**
+	 * Get the highest number of tiles the open list of the current search
+	 * held at once
+	 *
+	 * @return The peak size of whichever open list the search used
+	 */
+	public int getOpenPeak() {
+		return Math.max(open.getPeakSize(), buckets.getPeakSize());
+	}
+
+	/**
+	 * Make sure the bucket queue can hold the steps of a search
+	 *
+	 * @param maxStepCost The highest cost of moving into a tile
+	 */
+	public void ensureMaxStepCost(int maxStepCost) {
+		if (maxStepCost > this.maxStepCost) {
+			buckets = new BucketQueue(maxStepCost);
+			this.maxStepCost = maxStepCost;
+		}
+	}
+
+	/**
+	 * Make sure the search data of a tile belongs to the current search,
+	 * discarding whatever was left in it by a previous one.
+	 *
+	 * @param index The index of the tile about to be read or written
+	 */
+	public void touch(int index) {
+		if (generation[index] != searchGeneration) {
+			generation[index] = searchGeneration;
+			depth[index] = Integer.MAX_VALUE;
+			parent[index] = -1;
+			state[index] = 0;
+		}
+	}
+
+	/**
+	 * Add a tile to the open list, or update its position if it is already
+	 * there. Tiles are ordered by their depth plus the heuristic estimate,
+	 * and among tiles with the same score the deepest comes first.
+	 *
+	 * @param index The index of the tile
+	 * @param estimate The heuristic cost from the tile to the target
+	 */
+	public void addToOpen(int index, float estimate) {
+		score[index] = depth[index] + estimate;
+		state[index] = OPEN;
+		open.push(index, score[index], -depth[index]);
+	}
+}
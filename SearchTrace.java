@@ -0,0 +1,238 @@
+package com.qylla.util.pathfinding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A record of what searches did, tile by tile, kept in a ring buffer of
+ * ints so that recording never allocates and old events make room for new
+ * ones. A trace is attached to a {@link SearchContext} and every search run
+ * with that context records into it, so a slow query can be captured on a
+ * device as it happens, written out with {@link #write(DataOutputStream)}
+ * and looked at later with the {@link SearchTraceDumper}.
+ *
+ * Each event is a type, a tile index and a value, packed into two ints.
+ * A search starts with a START event and ends with a FINISH event, the
+ * events of older searches are lost first once the buffer is full.
+ *
+ * @author Cesar Ramirez
+ */
+public class SearchTrace {
+	/** A search started, the tile is the start and the value the target, -1 for range searches */
+	public static final int START = 0;
+	/** A tile was reached for the first time, the value is its cost */
+	public static final int PUSH = 1;
+	/** A better route to a tile already reached was found, the value is its new cost */
+	public static final int RELAX = 2;
+	/** A tile was taken out of the open list and expanded, the value is its cost */
+	public static final int EXPAND = 3;
+	/**
+	 * A search finished, the tile is the target and the value the cost of the
+	 * path, -1 if none was found. Searches without a single target give the
+	 * start as the tile and the number of tiles expanded as the value.
+	 */
+	public static final int FINISH = 4;
+	/** The names of the event types, indexed by type */
+	private static final String[] NAMES = {"START", "PUSH", "RELAX", "EXPAND", "FINISH"};
+
+	/** The version of the format written by {@link #write(DataOutputStream)} */
+	private static final int FORMAT_VERSION = 1;
+	/** The number of bits of the packed event used by the tile index */
+	private static final int TILE_BITS = 28;
+	/** The mask of the tile index in a packed event */
+	private static final int TILE_MASK = (1 << TILE_BITS) - 1;
+
+	/** The width of the map in tiles */
+	private int width;
+	/** The height of the map in tiles */
+	private int height;
+	/** The events, two ints each: the type and tile packed together, then the value */
+	private int[] events;
+	/** The number of events the buffer holds */
+	private int capacity;
+	/** The number of events recorded since the trace was cleared, including the lost ones */
+	private long recordedCount;
+
+	/**
+	 * Create a trace
+	 *
+	 * @param width The width in tiles of the map searched
+	 * @param height The height in tiles of the map searched
+	 * @param capacity The number of events to keep
+	 */
+	public SearchTrace(int width, int height, int capacity) {
+		this.width = width;
+		this.height = height;
+		this.capacity = capacity;
+		events = new int[capacity * 2];
+	}
+
+	/**
+	 * Record an event
+	 *
+	 * @param type The type of the event, START, PUSH, RELAX, EXPAND or FINISH
+	 * @param tile The index of the tile, y * width + x
+	 * @param value The value of the event, see the type constants
+	 */
+	public void record(int type, int tile, int value) {
+		int slot = (int) (recordedCount % capacity) * 2;
+		events[slot] = (type << TILE_BITS) | (tile & TILE_MASK);
+		events[slot + 1] = value;
+		recordedCount++;
+	}
+
+	/**
+	 * Throw away every event
+	 */
+	public void clear() {
+		recordedCount = 0;
+	}
+
+	/**
+	 * Get the number of events kept
+	 *
+	 * @return The number of events that can be read, at most the capacity
+	 */
+	public int getEventCount() {
+		return (int) Math.min(recordedCount, capacity);
+	}
+
+	/**
+	 * Get the number of events recorded since the trace was cleared
+	 *
+	 * @return The number of events recorded, including those lost to newer ones
+	 */
+	public long getRecordedCount() {
+		return recordedCount;
+	}
+
+	/**
+	 * Get the type of an event
+	 *
+	 * @param index The index of the event, 0 for the oldest kept
+	 * @return The type of the event
+	 */
+	public int getType(int index) {
+		return events[slot(index)] >>> TILE_BITS;
+	}
+
+	/**
+	 * Get the tile of an event
+	 *
+	 * @param index The index of the event, 0 for the oldest kept
+	 * @return The index of the tile, y * width + x
+	 */
+	public int getTile(int index) {
+		return events[slot(index)] & TILE_MASK;
+	}
+
+	/**
+	 * Get the value of an event
+	 *
+	 * @param index The index of the event, 0 for the oldest kept
+	 * @return The value of the event
+	 */
+	public int getValue(int index) {
+		return events[slot(index) + 1];
+	}
+
+	/**
+	 * Get the name of an event type
+	 *
+	 * @param type The type of the event
+	 * @return The name of the type
+	 */
+	public static String getTypeName(int type) {
+		return NAMES[type];
+	}
+
+	/**
+	 * Find the start of the last search in the trace
+	 *
+	 * @return The index of the last START event kept, or -1 if there is none
+	 */
+	public int findLastSearch() {
+		for (int i=getEventCount()-1;i>=0;i--) {
+			if (getType(i) == START) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the width of the map searched
+	 *
+	 * @return The width of the map in tiles
+	 */
+	public int getWidthInTiles() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the map searched
+	 *
+	 * @return The height of the map in tiles
+	 */
+	public int getHeightInTiles() {
+		return height;
+	}
+
+	/**
+	 * Write the events kept, oldest first
+	 *
+	 * @param out The stream to write to
+	 * @throws IOException If the stream fails
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		int count = getEventCount();
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(count);
+		for (int i=0;i<count;i++) {
+			int slot = slot(i);
+			out.writeInt(events[slot]);
+			out.writeInt(events[slot + 1]);
+		}
+	}
+
+	/**
+	 * Read a trace written by {@link #write(DataOutputStream)}
+	 *
+	 * @param in The stream to read from
+	 * @return The trace, holding exactly the events read
+	 * @throws IOException If the stream fails or doesn't hold a trace
+	 */
+	public static SearchTrace read(DataInputStream in) throws IOException {
+		int version = in.readInt();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unknown search trace format " + version);
+		}
+		int width = in.readInt();
+		int height = in.readInt();
+		int count = in.readInt();
+		SearchTrace trace = new SearchTrace(width, height, Math.max(count, 1));
+		for (int i=0;i<count;i++) {
+			trace.events[i * 2] = in.readInt();
+			trace.events[i * 2 + 1] = in.readInt();
+		}
+		trace.recordedCount = count;
+		return trace;
+	}
+
+	/**
+	 * Get the slot in the buffer of an event
+	 *
+	 * @param index The index of the event, 0 for the oldest kept
+	 * @return The slot of the first int of the event
+	 */
+	private int slot(int index) {
+		int count = getEventCount();
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Event " + index + " of a trace with " + count + " events");
+		}
+		return (int) ((recordedCount - count + index) % capacity) * 2;
+	}
+}
@@ -0,0 +1,186 @@
+package com.qylla.util.pathfinding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Turns a {@link SearchTrace} into something a person can read: a list of
+ * events or a picture of one search. It needs no rendering context, so
+ * traces captured on a device can be looked at on any machine.
+ *
+ * From the command line:
+ *
+ * <pre>
+ * java com.qylla.util.pathfinding.SearchTraceDumper trace.bin text
+ * java com.qylla.util.pathfinding.SearchTraceDumper trace.bin image search.ppm [scale]
+ * </pre>
+ *
+ * The picture is a PPM image of the last search in the trace. Tiles that
+ * were only reached are green, expanded tiles go from blue to red in the
+ * order they were expanded, the start is white and the target yellow.
+ *
+ * @author Cesar Ramirez
+ */
+public class SearchTraceDumper {
+	/** The colour of the tiles the search never reached */
+	private static final int UNREACHED = 0x202020;
+	/** The colour of the tiles that were reached but never expanded */
+	private static final int REACHED = 0x30A030;
+	/** The colour of the start tile */
+	private static final int START = 0xFFFFFF;
+	/** The colour of the target tile */
+	private static final int TARGET = 0xFFFF00;
+
+	/**
+	 * Write the events of a trace, one per line
+	 *
+	 * @param trace The trace to write
+	 * @param from The index of the first event to write
+	 * @param writer The writer to write to, not closed
+	 */
+	public static void writeText(SearchTrace trace, int from, Writer writer) {
+		PrintWriter out = new PrintWriter(writer);
+		int width = trace.getWidthInTiles();
+		for (int i=from;i<trace.getEventCount();i++) {
+			int type = trace.getType(i);
+			int tile = trace.getTile(i);
+			int value = trace.getValue(i);
+			out.print(SearchTrace.getTypeName(type));
+			out.print(' ');
+			out.print(tile % width);
+			out.print(',');
+			out.print(tile / width);
+			if (type == SearchTrace.START) {
+				if (value >= 0) {
+					out.print(" to " + (value % width) + "," + (value / width));
+				}
+			} else {
+				out.print(" cost=" + value);
+			}
+			out.println();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Draw one search of a trace as a binary PPM image, one square of pixels
+	 * per tile
+	 *
+	 * @param trace The trace holding the search
+	 * @param from The index of the START event of the search
+	 * @param scale The size in pixels of the square drawn for each tile
+	 * @param stream The stream to write the image to, not closed
+	 * @throws IOException If the stream fails
+	 */
+	public static void writeImage(SearchTrace trace, int from, int scale, OutputStream stream) throws IOException {
+		int width = trace.getWidthInTiles();
+		int height = trace.getHeightInTiles();
+		int[] colours = new int[width * height];
+		for (int i=0;i<colours.length;i++) {
+			colours[i] = UNREACHED;
+		}
+
+		// count the expansions first so their colour can follow their order
+		int expansions = 0;
+		int end = trace.getEventCount();
+		for (int i=from;i<end;i++) {
+			if (i > from && trace.getType(i) == SearchTrace.START) {
+				end = i;
+				break;
+			}
+			if (trace.getType(i) == SearchTrace.EXPAND) {
+				expansions++;
+			}
+		}
+
+		int start = -1;
+		int target = -1;
+		int expanded = 0;
+		for (int i=from;i<end;i++) {
+			int tile = trace.getTile(i);
+			switch (trace.getType(i)) {
+			case SearchTrace.START:
+				start = tile;
+				target = trace.getValue(i);
+				break;
+			case SearchTrace.PUSH:
+			case SearchTrace.RELAX:
+				if (colours[tile] == UNREACHED) {
+					colours[tile] = REACHED;
+				}
+				break;
+			case SearchTrace.EXPAND:
+				int red = 255 * expanded / Math.max(1, expansions - 1);
+				colours[tile] = (red << 16) | (255 - red);
+				expanded++;
+				break;
+			}
+		}
+		if (start >= 0 && start < colours.length) {
+			colours[start] = START;
+		}
+		if (target >= 0 && target < colours.length) {
+			colours[target] = TARGET;
+		}
+
+		OutputStream out = new BufferedOutputStream(stream);
+		out.write(("P6\n" + (width * scale) + " " + (height * scale) + "\n255\n").getBytes("US-ASCII"));
+		for (int y=0;y<height * scale;y++) {
+			for (int x=0;x<width * scale;x++) {
+				int colour = colours[(y / scale) * width + (x / scale)];
+				out.write(colour >> 16);
+				out.write((colour >> 8) & 0xFF);
+				out.write(colour & 0xFF);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Dump a trace file written by {@link SearchTrace#write(java.io.DataOutputStream)}
+	 *
+	 * @param args The trace file, then text or image, then for images the
+	 * file to write and optionally the scale
+	 * @throws IOException If the files can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || (args[1].equals("image") && args.length < 3)) {
+			System.err.println("Usage: SearchTraceDumper <trace> text");
+			System.err.println("       SearchTraceDumper <trace> image <out.ppm> [scale]");
+			System.exit(1);
+		}
+
+		SearchTrace trace;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+		try {
+			trace = SearchTrace.read(in);
+		} finally {
+			in.close();
+		}
+
+		if (args[1].equals("text")) {
+			writeText(trace, 0, new OutputStreamWriter(System.out));
+		} else {
+			int from = trace.findLastSearch();
+			if (from < 0) {
+				System.err.println("The trace holds no complete search");
+				System.exit(1);
+			}
+			int scale = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+			OutputStream out = new FileOutputStream(args[2]);
+			try {
+				writeImage(trace, from, scale, out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.qylla.util.pathfinding.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import com.qylla.util.pathfinding.AStarPathFinder;
+import com.qylla.util.pathfinding.GridPathFinder;
+import com.qylla.util.pathfinding.Path;
+import com.qylla.util.pathfinding.interfaces.PathFinder;
+
+/**
+ * A check that the search hot path allocates nothing. Path queries are run
+ * against GridPathFinder and AStarPathFinder until the finders, the reused
+ * path and the virtual machine have warmed up, then the same queries are
+ * run again and the bytes allocated by the thread in the meantime are
+ * counted. Any byte at all is a failure.
+ *
+ * Run it with the number of warm up and measured rounds over the queries
+ * as optional arguments, the process exits with a non zero status if any
+ * finder allocated.
+ *
+ * @author Cesar Ramirez
+ */
+public class AllocationCheck {
+	/** The width and height of the map */
+	private static final int SIZE = 128;
+	/** The number of different queries */
+	private static final int QUERIES = 64;
+	/** The movement budgets the queries are run with */
+	private static final int[] DISTANCES = {40, PathFinderBenchmark.UNLIMITED};
+
+	/**
+	 * Entry point of the check
+	 *
+	 * @param args The number of warm up rounds and of measured rounds, both optional
+	 */
+	public static void main(String[] args) {
+		int warmupRounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int measuredRounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("The virtual machine can't count allocated bytes, nothing checked");
+			return;
+		}
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) bean;
+		long thread = Thread.currentThread().getId();
+
+		SyntheticMap map = new SyntheticMap(SIZE, SIZE, 0.2f, SyntheticMap.COSTS_PATCHES, 3);
+		int[] queries = new int[QUERIES * 4];
+		Random random = new Random(13);
+		for (int i=0;i<queries.length;i++) {
+			queries[i] = random.nextInt(SIZE);
+		}
+
+		int failures = 0;
+		for (int d=0;d<2;d++) {
+			boolean allowDiagMovement = (d == 1);
+			PathFinder[] finders = {new GridPathFinder(map, allowDiagMovement), new AStarPathFinder(map, allowDiagMovement)};
+			for (int f=0;f<finders.length;f++) {
+				for (int m=0;m<DISTANCES.length;m++) {
+					Path path = new Path();
+					run(finders[f], DISTANCES[m], queries, path, warmupRounds);
+
+					// reading the counter may allocate itself, that much is taken off
+					long overhead = allocation.getThreadAllocatedBytes(thread);
+					long before = allocation.getThreadAllocatedBytes(thread);
+					overhead = before - overhead;
+					run(finders[f], DISTANCES[m], queries, path, measuredRounds);
+					long bytes = allocation.getThreadAllocatedBytes(thread) - before - overhead;
+
+					System.out.println(String.format("%-20s diagonal=%-5s distance=%-10s %8d bytes over %d searches",
+							finders[f].getClass().getSimpleName(), allowDiagMovement,
+							DISTANCES[m] == PathFinderBenchmark.UNLIMITED ? "-" : String.valueOf(DISTANCES[m]),
+							bytes, measuredRounds * QUERIES));
+					if (bytes > 0) {
+						failures++;
+					}
+				}
+			}
+		}
+
+		if (failures > 0) {
+			System.out.println(failures + " searches allocated");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Run every query a number of times, reusing one path
+	 *
+	 * @param finder The finder to query
+	 * @param maxDistance The movement budget of the queries
+	 * @param queries The queries as sx, sy, tx, ty quadruples
+	 * @param path The path to reuse
+	 * @param rounds The number of times to run every query
+	 */
+	private static void run(PathFinder finder, int maxDistance, int[] queries, Path path, int rounds) {
+		for (int r=0;r<rounds;r++) {
+			for (int q=0;q<queries.length;q+=4) {
+				finder.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+			}
+		}
+	}
+}
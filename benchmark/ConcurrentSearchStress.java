@@ -0,0 +1,118 @@
+package com.qylla.util.pathfinding.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.qylla.util.pathfinding.GridPathFinder;
+import com.qylla.util.pathfinding.MovementRange;
+import com.qylla.util.pathfinding.Path;
+
+/**
+ * A stress run of one GridPathFinder shared by many threads. Thousands of
+ * path and range queries are answered on a single thread first, then the
+ * same queries are run concurrently against the same finder and every
+ * answer is compared with the single threaded one.
+ *
+ * Run it with the number of threads and queries as optional arguments,
+ * the process exits with a non zero status if any answer differs.
+ *
+ * @author Cesar Ramirez
+ */
+public class ConcurrentSearchStress {
+	/** The movement budget of the queries */
+	private static final int MAX_DISTANCE = 40;
+
+	/**
+	 * Entry point of the stress run
+	 *
+	 * @param args The number of threads and the number of queries, both optional
+	 * @throws Exception If a worker thread fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4 * Runtime.getRuntime().availableProcessors();
+		int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		SyntheticMap map = new SyntheticMap(128, 128, 0.2f, SyntheticMap.COSTS_PATCHES, 11);
+		final GridPathFinder finder = new GridPathFinder(map, false);
+		final int[] queries = new int[queryCount * 4];
+		Random random = new Random(5);
+		for (int i=0;i<queries.length;i++) {
+			queries[i] = random.nextInt(128);
+		}
+
+		// the single threaded answers
+		final long[] expected = new long[queryCount];
+		for (int q=0;q<queryCount;q++) {
+			expected[q] = answer(finder, queries, q, new Path(), new MovementRange(128, 128));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		final int share = (queryCount + threads - 1) / threads;
+		long start = System.nanoTime();
+		for (int t=0;t<threads;t++) {
+			final int first = t * share;
+			final int last = Math.min(queryCount, first + share);
+			results.add(executor.submit(new Callable<Integer>() {
+				public Integer call() {
+					Path path = new Path();
+					MovementRange range = new MovementRange(128, 128);
+					int mismatches = 0;
+					for (int q=first;q<last;q++) {
+						if (answer(finder, queries, q, path, range) != expected[q]) {
+							mismatches++;
+						}
+					}
+					return mismatches;
+				}
+			}));
+		}
+
+		int mismatches = 0;
+		for (int t=0;t<results.size();t++) {
+			mismatches += results.get(t).get().intValue();
+		}
+		executor.shutdown();
+
+		System.out.println(queryCount + " queries on " + threads + " threads in "
+				+ (System.nanoTime() - start) / 1000000 + " ms, " + mismatches + " mismatches");
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Answer a query and sum the answer up. Even queries look for a path,
+	 * odd ones for a movement range.
+	 *
+	 * @param finder The finder to query
+	 * @param queries The queries as sx, sy, tx, ty quadruples
+	 * @param query The index of the query to answer
+	 * @param path The path to reuse
+	 * @param range The range to reuse
+	 * @return A checksum of the answer
+	 */
+	private static long answer(GridPathFinder finder, int[] queries, int query, Path path, MovementRange range) {
+		int q = query * 4;
+		long sum = 0;
+		if ((query & 1) == 0) {
+			if (!finder.findPath(null, MAX_DISTANCE, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path)) {
+				return -1;
+			}
+			for (int i=0;i<path.getLength();i++) {
+				sum = sum * 31 + (path.getX(i) << 16) + path.getY(i);
+			}
+		} else {
+			finder.findRange(null, MAX_DISTANCE / 4, queries[q], queries[q + 1], range);
+			for (int i=0;i<range.getTileCount();i++) {
+				sum = sum * 31 + range.getCost(range.getX(i), range.getY(i));
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,388 @@
+package com.qylla.util.pathfinding.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.qylla.util.pathfinding.AStarPathFinder;
+import com.qylla.util.pathfinding.AnytimeAStarPathFinder;
+import com.qylla.util.pathfinding.BidirectionalPathFinder;
+import com.qylla.util.pathfinding.GridPathFinder;
+import com.qylla.util.pathfinding.HierarchicalPathFinder;
+import com.qylla.util.pathfinding.JumpPointPathFinder;
+import com.qylla.util.pathfinding.LandmarkHeuristic;
+import com.qylla.util.pathfinding.MovementRange;
+import com.qylla.util.pathfinding.Path;
+
+/**
+ * A benchmark of the path finders over generated maps. Every combination of
+ * map size, obstacle density, cost distribution, movement budget and
+ * diagonal movement is run for a fixed time after a warm up, and the
+ * throughput, the nodes expanded and the bytes allocated per operation
+ * are reported.
+ *
+ * Run it with the parameters to vary as arguments, e.g.
+ * <pre>
+ * java com.qylla.util.pathfinding.benchmark.PathFinderBenchmark sizes=64,256 diagonal=false measure=1000
+ * </pre>
+ * The recognised parameters are sizes, densities, costs (uniform, random,
+ * patches), distances (0 for unlimited), diagonal, warmup and measure (in
+ * milliseconds) and filter, a piece of the name of the workloads to run.
+ *
+ * @author Cesar Ramirez
+ */
+public class PathFinderBenchmark {
+	/** The movement budget used for searches without a limit */
+	public static final int UNLIMITED = Integer.MAX_VALUE / 2;
+	/** The number of different queries run against each map */
+	private static final int QUERIES = 64;
+	/** The number of landmarks picked for the landmark heuristic */
+	private static final int LANDMARKS = 8;
+
+	/** The map sizes, the maps are square */
+	private int[] sizes = {16, 64, 256, 1024};
+	/** The fractions of blocked tiles */
+	private float[] densities = {0f, 0.1f, 0.25f};
+	/** The cost distributions, as SyntheticMap constants */
+	private int[] costs = {SyntheticMap.COSTS_UNIFORM, SyntheticMap.COSTS_RANDOM, SyntheticMap.COSTS_PATCHES};
+	/** The movement budgets */
+	private int[] distances = {10, 50, UNLIMITED};
+	/** The diagonal movement settings */
+	private boolean[] diagonals = {false, true};
+	/** The warm up time of each benchmark, in nanoseconds */
+	private long warmupNanos = 200000000L;
+	/** The measured time of each benchmark, in nanoseconds */
+	private long measureNanos = 500000000L;
+	/** Only workloads whose name contains this are run */
+	private String filter = "";
+	/** The pool the preprocessing of the finders runs on */
+	private ForkJoinPool pool = new ForkJoinPool();
+
+	/**
+	 * A benchmarked operation, set up against one map
+	 *
+	 * @author Cesar Ramirez
+	 */
+	public static abstract class Workload {
+		/** The name of the workload as reported */
+		private String name;
+
+		/**
+		 * Create a workload
+		 *
+		 * @param name The name of the workload as reported
+		 */
+		public Workload(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Get the name of the workload
+		 *
+		 * @return The name of the workload as reported
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Run one operation
+		 *
+		 * @param query The query to run, between 0 and the number of queries
+		 * @return The number of nodes expanded by the operation
+		 */
+		public abstract int run(int query);
+	}
+
+	/**
+	 * Entry point of the benchmark
+	 *
+	 * @param args The parameters to change, as name=value pairs
+	 */
+	public static void main(String[] args) {
+		PathFinderBenchmark benchmark = new PathFinderBenchmark();
+		for (int i=0;i<args.length;i++) {
+			benchmark.setParameter(args[i]);
+		}
+		benchmark.run();
+	}
+
+	/**
+	 * Change one of the benchmark parameters
+	 *
+	 * @param argument The parameter as a name=value pair
+	 */
+	public void setParameter(String argument) {
+		int split = argument.indexOf('=');
+		if (split < 0) {
+			throw new IllegalArgumentException("Expected name=value but got " + argument);
+		}
+		String name = argument.substring(0, split);
+		String[] values = argument.substring(split + 1).split(",");
+
+		if (name.equals("sizes")) {
+			sizes = new int[values.length];
+			for (int i=0;i<values.length;i++) {
+				sizes[i] = Integer.parseInt(values[i]);
+			}
+		} else if (name.equals("densities")) {
+			densities = new float[values.length];
+			for (int i=0;i<values.length;i++) {
+				densities[i] = Float.parseFloat(values[i]);
+			}
+		} else if (name.equals("costs")) {
+			costs = new int[values.length];
+			for (int i=0;i<values.length;i++) {
+				costs[i] = -1;
+				for (int c=SyntheticMap.COSTS_UNIFORM;c<=SyntheticMap.COSTS_PATCHES;c++) {
+					if (SyntheticMap.getCostsName(c).equals(values[i])) {
+						costs[i] = c;
+					}
+				}
+				if (costs[i] < 0) {
+					throw new IllegalArgumentException("Unknown cost distribution " + values[i]);
+				}
+			}
+		} else if (name.equals("distances")) {
+			distances = new int[values.length];
+			for (int i=0;i<values.length;i++) {
+				int distance = Integer.parseInt(values[i]);
+				distances[i] = distance <= 0 ? UNLIMITED : distance;
+			}
+		} else if (name.equals("diagonal")) {
+			diagonals = new boolean[values.length];
+			for (int i=0;i<values.length;i++) {
+				diagonals[i] = Boolean.parseBoolean(values[i]);
+			}
+		} else if (name.equals("warmup")) {
+			warmupNanos = Long.parseLong(values[0]) * 1000000L;
+		} else if (name.equals("measure")) {
+			measureNanos = Long.parseLong(values[0]) * 1000000L;
+		} else if (name.equals("filter")) {
+			filter = values[0];
+		} else {
+			throw new IllegalArgumentException("Unknown parameter " + name);
+		}
+	}
+
+	/**
+	 * Run every combination of the parameters and print the results
+	 */
+	public void run() {
+		System.out.println(String.format("%-32s %5s %7s %8s %9s %5s %12s %12s %12s",
+				"workload", "size", "density", "costs", "distance", "diag", "ops/s", "expanded/op", "bytes/op"));
+		for (int s=0;s<sizes.length;s++) {
+			for (int d=0;d<densities.length;d++) {
+				for (int c=0;c<costs.length;c++) {
+					SyntheticMap map = new SyntheticMap(sizes[s], sizes[s], densities[d], costs[c], 42);
+					for (int g=0;g<diagonals.length;g++) {
+						for (int m=0;m<distances.length;m++) {
+							ArrayList<Workload> workloads = createWorkloads(map, diagonals[g], distances[m]);
+							for (int w=0;w<workloads.size();w++) {
+								Workload workload = workloads.get(w);
+								if (workload.getName().indexOf(filter) < 0) {
+									continue;
+								}
+								String label = String.format("%-32s %5d %7.2f %8s %9s %5s", workload.getName(), sizes[s],
+										densities[d], SyntheticMap.getCostsName(costs[c]),
+										distances[m] == UNLIMITED ? "-" : String.valueOf(distances[m]), diagonals[g]);
+								measure(label, workload);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create the workloads to run against a map
+	 *
+	 * @param map The map to search
+	 * @param allowDiagMovement True if the finders should try diagonal movement
+	 * @param maxDistance The movement budget of the searches
+	 * @return The workloads to measure
+	 */
+	protected ArrayList<Workload> createWorkloads(SyntheticMap map, boolean allowDiagMovement, final int maxDistance) {
+		ArrayList<Workload> workloads = new ArrayList<Workload>();
+		final int[] queries = createQueries(map, maxDistance);
+
+		final AStarPathFinder astar = new AStarPathFinder(map, allowDiagMovement);
+		final Path path = new Path();
+		workloads.add(new Workload("AStarPathFinder.findPath") {
+			public int run(int query) {
+				int q = query * 4;
+				astar.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+				return astar.getExpandedCount();
+			}
+		});
+		if (maxDistance != UNLIMITED) {
+			// an unlimited range is the whole map, which is not a meaningful query
+			workloads.add(new Workload("AStarPathFinder.findRange") {
+				public int run(int query) {
+					int q = query * 4;
+					astar.findRange(null, maxDistance, queries[q], queries[q + 1], true);
+					return astar.getExpandedCount();
+				}
+			});
+		}
+
+		final GridPathFinder grid = new GridPathFinder(map, allowDiagMovement);
+		workloads.add(new Workload("GridPathFinder.findPath") {
+			public int run(int query) {
+				int q = query * 4;
+				grid.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+				return grid.getExpandedCount();
+			}
+		});
+		if (maxDistance != UNLIMITED) {
+			final MovementRange range = new MovementRange(map.getWidthInTiles(), map.getHeightInTiles());
+			workloads.add(new Workload("GridPathFinder.findRange") {
+				public int run(int query) {
+					int q = query * 4;
+					grid.findRange(null, maxDistance, queries[q], queries[q + 1], range);
+					return grid.getExpandedCount();
+				}
+			});
+		}
+
+		final JumpPointPathFinder jump = new JumpPointPathFinder(map, allowDiagMovement);
+		workloads.add(new Workload("JumpPointPathFinder.findPath") {
+			public int run(int query) {
+				int q = query * 4;
+				jump.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+				return jump.getExpandedCount();
+			}
+		});
+
+		final BidirectionalPathFinder bidirectional = new BidirectionalPathFinder(map, allowDiagMovement);
+		workloads.add(new Workload("BidirectionalPathFinder.findPath") {
+			public int run(int query) {
+				int q = query * 4;
+				bidirectional.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+				return bidirectional.getExpandedCount();
+			}
+		});
+
+		// weighted A*, the paths may cost up to twice the cheapest
+		final AnytimeAStarPathFinder weighted = new AnytimeAStarPathFinder(grid, 2, 0);
+		workloads.add(new Workload("AnytimeAStarPathFinder.findPath") {
+			public int run(int query) {
+				int q = query * 4;
+				weighted.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+				return weighted.getExpandedCount();
+			}
+		});
+
+		// A* guided by landmarks, worked out before the measuring starts
+		final GridPathFinder landmark = new GridPathFinder(map, allowDiagMovement);
+		landmark.setHeuristic(new LandmarkHeuristic(landmark, null, LANDMARKS, pool));
+		workloads.add(new Workload("LandmarkHeuristic.findPath") {
+			public int run(int query) {
+				int q = query * 4;
+				landmark.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+				return landmark.getExpandedCount();
+			}
+		});
+
+		final HierarchicalPathFinder hierarchical = new HierarchicalPathFinder(map, allowDiagMovement);
+		workloads.add(new Workload("HierarchicalPathFinder.findPath") {
+			public int run(int query) {
+				int q = query * 4;
+				hierarchical.findPath(null, maxDistance, queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+				return hierarchical.getExpandedCount();
+			}
+		});
+
+		return workloads;
+	}
+
+	/**
+	 * Pick the start and target locations of the queries run against a map.
+	 * Both are open tiles, and when the movement budget is limited the target
+	 * is close enough to the start to be reachable on open ground.
+	 *
+	 * @param map The map to search
+	 * @param maxDistance The movement budget of the searches
+	 * @return The queries as sx, sy, tx, ty quadruples
+	 */
+	protected int[] createQueries(SyntheticMap map, int maxDistance) {
+		Random random = new Random(7);
+		int width = map.getWidthInTiles();
+		int height = map.getHeightInTiles();
+		int[] queries = new int[QUERIES * 4];
+		for (int q=0;q<QUERIES;q++) {
+			int sx, sy, tx, ty;
+			int attempts = 0;
+			do {
+				sx = random.nextInt(width);
+				sy = random.nextInt(height);
+				if (maxDistance == UNLIMITED) {
+					tx = random.nextInt(width);
+					ty = random.nextInt(height);
+				} else {
+					int dx = random.nextInt(maxDistance + 1);
+					int dy = random.nextInt(maxDistance + 1 - dx);
+					tx = sx + (random.nextBoolean() ? dx : -dx);
+					ty = sy + (random.nextBoolean() ? dy : -dy);
+				}
+				attempts++;
+			} while (attempts < 1000 && (tx < 0 || ty < 0 || tx >= width || ty >= height
+					|| map.blocked[sx][sy] || map.blocked[tx][ty]));
+
+			queries[q * 4] = sx;
+			queries[q * 4 + 1] = sy;
+			queries[q * 4 + 2] = Math.max(0, Math.min(width - 1, tx));
+			queries[q * 4 + 3] = Math.max(0, Math.min(height - 1, ty));
+		}
+		return queries;
+	}
+
+	/**
+	 * Warm up and measure a workload, then print the results
+	 *
+	 * @param label The description of the workload and its parameters
+	 * @param workload The workload to measure
+	 */
+	protected void measure(String label, Workload workload) {
+		long start = System.nanoTime();
+		int query = 0;
+		while (System.nanoTime() - start < warmupNanos) {
+			workload.run(query);
+			query = (query + 1) % QUERIES;
+		}
+
+		long operations = 0;
+		long expanded = 0;
+		long allocated = getAllocatedBytes();
+		start = System.nanoTime();
+		long elapsed;
+		do {
+			expanded += workload.run(query);
+			query = (query + 1) % QUERIES;
+			operations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < measureNanos);
+		long bytes = allocated < 0 ? -1 : getAllocatedBytes() - allocated;
+
+		System.out.println(String.format("%s %12.1f %12.1f %12s", label,
+				operations * 1000000000.0 / elapsed,
+				(double) expanded / operations,
+				bytes < 0 ? "n/a" : String.format("%.1f", (double) bytes / operations)));
+	}
+
+	/**
+	 * Get the number of bytes allocated so far by the current thread
+	 *
+	 * @return The number of bytes allocated, or -1 if the virtual machine can't tell
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
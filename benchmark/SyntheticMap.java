@@ -0,0 +1,124 @@
+package com.qylla.util.pathfinding.benchmark;
+
+import java.util.Random;
+
+import com.qylla.util.pathfinding.interfaces.Mover;
+import com.qylla.util.pathfinding.interfaces.TerrainMap;
+import com.qylla.util.pathfinding.interfaces.TileBasedMap;
+
+/**
+ * A generated tile map used to benchmark the path finders without a game
+ * map. Blocked tiles are scattered at random and tile costs follow one of
+ * a few distributions.
+ *
+ * @author Cesar Ramirez
+ */
+public class SyntheticMap implements TerrainMap {
+	/** Every tile costs 1 */
+	public static final int COSTS_UNIFORM = 0;
+	/** Every tile costs between 1 and 4, picked at random */
+	public static final int COSTS_RANDOM = 1;
+	/** Plains of cost 1 with patches of forest (2) and mountains (4) */
+	public static final int COSTS_PATCHES = 2;
+
+	/** The width of the map in tiles */
+	private int width;
+	/** The height of the map in tiles */
+	private int height;
+	/** The cost of each tile, indexed by x then y */
+	public int[][] terrain;
+	/** True for each tile that blocks movement, indexed by x then y */
+	public boolean[][] blocked;
+
+	/**
+	 * Generate a map
+	 *
+	 * @param width The width of the map in tiles
+	 * @param height The height of the map in tiles
+	 * @param obstacleDensity The fraction of tiles that block movement, between 0 and 1
+	 * @param costs The cost distribution, one of the COSTS constants
+	 * @param seed The seed of the generator, the same seed gives the same map
+	 */
+	public SyntheticMap(int width, int height, float obstacleDensity, int costs, long seed) {
+		this.width = width;
+		this.height = height;
+		terrain = new int[width][height];
+		blocked = new boolean[width][height];
+
+		Random random = new Random(seed);
+		for (int x=0;x<width;x++) {
+			for (int y=0;y<height;y++) {
+				blocked[x][y] = random.nextFloat() < obstacleDensity;
+				terrain[x][y] = (costs == COSTS_RANDOM) ? 1 + random.nextInt(4) : 1;
+			}
+		}
+
+		if (costs == COSTS_PATCHES) {
+			// one patch per 64 tiles, each a square of a few tiles across
+			int patches = (width * height) / 64;
+			for (int i=0;i<patches;i++) {
+				int cost = random.nextInt(3) == 0 ? 4 : 2;
+				int px = random.nextInt(width);
+				int py = random.nextInt(height);
+				int radius = 1 + random.nextInt(3);
+				for (int x=Math.max(0, px - radius);x<=Math.min(width - 1, px + radius);x++) {
+					for (int y=Math.max(0, py - radius);y<=Math.min(height - 1, py + radius);y++) {
+						terrain[x][y] = cost;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the name of a cost distribution
+	 *
+	 * @param costs One of the COSTS constants
+	 * @return The name of the distribution
+	 */
+	public static String getCostsName(int costs) {
+		switch (costs) {
+		case COSTS_UNIFORM:
+			return "uniform";
+		case COSTS_RANDOM:
+			return "random";
+		default:
+			return "patches";
+		}
+	}
+
+	/**
+	 * @see TerrainMap#getTerrain()
+	 */
+	public int[][] getTerrain() {
+		return terrain;
+	}
+
+	/**
+	 * @see TileBasedMap#getWidthInTiles()
+	 */
+	public int getWidthInTiles() {
+		return width;
+	}
+
+	/**
+	 * @see TileBasedMap#getHeightInTiles()
+	 */
+	public int getHeightInTiles() {
+		return height;
+	}
+
+	/**
+	 * @see TileBasedMap#isBlocked(Mover, int, int)
+	 */
+	public boolean isBlocked(Mover mover, int x, int y) {
+		return blocked[x][y];
+	}
+
+	/**
+	 * @see TileBasedMap#getCost(Mover, int, int)
+	 */
+	public float getCost(Mover mover, int x, int y) {
+		return terrain[x][y];
+	}
+}
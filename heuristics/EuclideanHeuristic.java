@@ -0,0 +1,36 @@
+package com.qylla.util.pathfinding.heuristics;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+
+/**
+ * A heuristic that uses the straight line distance between the current
+ * location and the target. It never overestimates when only horizontal
+ * and vertical movement is allowed, but it does when diagonal steps cost
+ * the same as straight ones, use {@link OctileHeuristic} there.
+ * 
+ * @author Cesar Ramirez
+ */
+public class EuclideanHeuristic implements AStarHeuristic {
+	/** The cost of the cheapest tile on the map */
+	private float minimumCost;
+	
+	/**
+	 * Create a new heuristic 
+	 *  
+	 * @param minimumCost The cost of the cheapest tile on the map
+	 */
+	public EuclideanHeuristic(float minimumCost) {
+		this.minimumCost = minimumCost;
+	}
+	
+	/**
+	 * @see AStarHeuristic#getCost(Mover, int, int, int, int)
+	 */
+	public float getCost(Mover mover, int x, int y, int tx, int ty) {		
+		float dx = tx - x;
+		float dy = ty - y;
+		
+		return minimumCost * (float) Math.sqrt((dx*dx)+(dy*dy));
+	}
+}
@@ -0,0 +1,33 @@
+package com.qylla.util.pathfinding.heuristics;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+
+/**
+ * A heuristic that drives the search based on the Manhattan distance
+ * between the current location and the target. This is the exact number
+ * of steps needed when only horizontal and vertical movement is allowed,
+ * so it never overestimates on maps without diagonal movement.
+ * 
+ * @author Cesar Ramirez
+ */
+public class ManhattanHeuristic implements AStarHeuristic {
+	/** The cost of the cheapest tile on the map */
+	private float minimumCost;
+	
+	/**
+	 * Create a new heuristic 
+	 *  
+	 * @param minimumCost The cost of the cheapest tile on the map
+	 */
+	public ManhattanHeuristic(float minimumCost) {
+		this.minimumCost = minimumCost;
+	}
+	
+	/**
+	 * @see AStarHeuristic#getCost(Mover, int, int, int, int)
+	 */
+	public float getCost(Mover mover, int x, int y, int tx, int ty) {
+		return minimumCost * (Math.abs(x - tx) + Math.abs(y - ty));
+	}
+}
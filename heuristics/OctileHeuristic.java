@@ -0,0 +1,43 @@
+package com.qylla.util.pathfinding.heuristics;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+
+/**
+ * A heuristic for maps with diagonal movement. The distance is made of as
+ * many diagonal steps as possible followed by straight steps. 
+ * 
+ * The path finders in this package charge the cost of the tile entered
+ * for diagonal steps too, in which case both costs should be the cost of
+ * the cheapest tile and the heuristic becomes the Chebyshev distance.
+ * 
+ * @author Cesar Ramirez
+ */
+public class OctileHeuristic implements AStarHeuristic {
+	/** The cost of the cheapest straight step */
+	private float straightCost;
+	/** The cost of the cheapest diagonal step */
+	private float diagonalCost;
+	
+	/**
+	 * Create a new heuristic 
+	 *  
+	 * @param straightCost The cost of the cheapest straight step
+	 * @param diagonalCost The cost of the cheapest diagonal step
+	 */
+	public OctileHeuristic(float straightCost, float diagonalCost) {
+		this.straightCost = straightCost;
+		this.diagonalCost = diagonalCost;
+	}
+	
+	/**
+	 * @see AStarHeuristic#getCost(Mover, int, int, int, int)
+	 */
+	public float getCost(Mover mover, int x, int y, int tx, int ty) {
+		int dx = Math.abs(x - tx);
+		int dy = Math.abs(y - ty);
+		int diagonal = Math.min(dx, dy);
+		
+		return (diagonalCost * diagonal) + (straightCost * (dx + dy - 2 * diagonal));
+	}
+}
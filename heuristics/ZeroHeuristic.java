@@ -0,0 +1,19 @@
+package com.qylla.util.pathfinding.heuristics;
+
+import com.qylla.util.pathfinding.interfaces.AStarHeuristic;
+import com.qylla.util.pathfinding.interfaces.Mover;
+
+/**
+ * A heuristic that gives no guidance at all, turning the search into a
+ * plain Dijkstra search ordered by the cost from the start.
+ * 
+ * @author Cesar Ramirez
+ */
+public class ZeroHeuristic implements AStarHeuristic {
+	/**
+	 * @see AStarHeuristic#getCost(Mover, int, int, int, int)
+	 */
+	public float getCost(Mover mover, int x, int y, int tx, int ty) {
+		return 0;
+	}
+}
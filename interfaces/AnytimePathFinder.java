@@ -0,0 +1,48 @@
+package com.qylla.util.pathfinding.interfaces;
+
+import com.qylla.util.pathfinding.Path;
+
+/**
+ * A path finder that can be given a budget of time or work. It returns the
+ * best path it has when the budget runs out, together with how far from the
+ * cheapest path that one may be, and can be called again to improve it.
+ *
+ * @author Cesar Ramirez
+ */
+public interface AnytimePathFinder extends PathFinder {
+	/** The bound returned when there is no path within the movement budget */
+	public static final float NO_PATH = -1;
+	/** The bound returned when the budget ran out before any path was found */
+	public static final float NOT_FOUND_YET = Float.POSITIVE_INFINITY;
+
+	/**
+	 * Start a search from the starting location provided (sx,sy) to the
+	 * target location (tx,ty), stopping when the budget runs out or the path
+	 * is as good as the finder is set to make it.
+	 *
+	 * @param mover The entity that will be moving along the path
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinate of the target location
+	 * @param ty The y coordinate of the target location
+	 * @param path The path to overwrite with the steps found
+	 * @param maxNanos The time the search may take in nanoseconds, 0 for no limit
+	 * @param maxExpansions The number of tiles the search may expand, 0 for no limit
+	 * @return The suboptimality bound of the path: it costs at most this many
+	 * times as much as the cheapest one, 1 if it is the cheapest. NOT_FOUND_YET
+	 * if no path was found within the budget, NO_PATH if there is none.
+	 */
+	public float findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path, long maxNanos, int maxExpansions);
+
+	/**
+	 * Carry on with the search started by the last call to
+	 * {@link #findPath(Mover, int, int, int, int, int, Path, long, int)}
+	 *
+	 * @param path The path to overwrite with the best steps found so far
+	 * @param maxNanos The time the search may take in nanoseconds, 0 for no limit
+	 * @param maxExpansions The number of tiles the search may expand, 0 for no limit
+	 * @return The suboptimality bound of the path, as for the first call
+	 */
+	public float improvePath(Path path, long maxNanos, int maxExpansions);
+}
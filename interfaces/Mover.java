@@ -1,18 +1,24 @@
 package com.qylla.util.pathfinding.interfaces;
 
-import com.qylla.util.pathfinding.Path.Step;
-
 /**
- * A tagging interface for an object representing the entity in the game that
- * is going to moving along the path. This allows us to pass around entity/state
- * information to determine whether a particular tile is blocked, or how much
- * cost to apply on a particular tile.
+ * An object representing the entity in the game that is going to move along
+ * the path. Its movement type decides which tiles block it and how much each
+ * tile costs it to enter, the map is asked for both with the mover passed in.
  * 
  * For instance, a Mover might represent a tank or plane on a game map. Passing round
  * this entity allows us to determine whether rough ground on a map should effect
- * the unit's cost for moving through the tile.
+ * the unit's cost for moving through the tile, and a plane would not be blocked
+ * by the water a tank can't cross.
  * 
  * @author Cesar Ramirez
  */
 public interface Mover{
+	/**
+	 * Get the movement type of the mover. Movers of the same type are blocked
+	 * by the same tiles and pay the same cost for each tile, so path finders
+	 * work the costs out once per type and share them between the movers.
+	 * 
+	 * @return The movement type, a small number starting at 0
+	 */
+	public int getMovementType();
 }
@@ -0,0 +1,45 @@
+package com.qylla.util.pathfinding.interfaces;
+
+import com.qylla.util.pathfinding.Path;
+
+/**
+ * A path finder that can find the paths from one starting location to
+ * many targets with a single search, instead of searching the same area
+ * again for every target.
+ * 
+ * @author Cesar Ramirez
+ */
+public interface MultiTargetPathFinder extends PathFinder {
+
+	/**
+	 * Find the paths from the starting location provided (sx,sy) to each
+	 * of the target locations (tx[i],ty[i]).
+	 * 
+	 * @param mover The entity that will be moving along the paths
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinates of the target locations
+	 * @param ty The y coordinates of the target locations
+	 * @return The path to each target, in the order of the targets, null
+	 * for the targets that can't be reached
+	 */
+	public Path[] findPaths(Mover mover, int maxDistance, int sx, int sy, int[] tx, int[] ty);
+	
+	/**
+	 * Find the paths from the starting location provided (sx,sy) to each
+	 * of the target locations (tx[i],ty[i]), writing them into paths
+	 * supplied by the caller.
+	 * 
+	 * @param mover The entity that will be moving along the paths
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinates of the target locations
+	 * @param ty The y coordinates of the target locations
+	 * @param paths The paths to overwrite, one per target. The path of a target
+	 * that can't be reached is left empty.
+	 * @return The number of targets that can be reached
+	 */
+	public int findPaths(Mover mover, int maxDistance, int sx, int sy, int[] tx, int[] ty, Path[] paths);
+}
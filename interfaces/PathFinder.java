@@ -1,8 +1,5 @@
 package com.qylla.util.pathfinding.interfaces;
 
-import org.anddev.andengine.entity.scene.Scene;
-import org.anddev.andengine.opengl.font.Font;
-
 import com.qylla.util.pathfinding.Path;
 
 /**
@@ -31,4 +28,22 @@ public interface PathFinder {
 	 * @return The path found from start to end, or null if no path can be found.
 	 */
 	public Path findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty);
+	
+	/**
+	 * Find a path from the starting location provided (sx,sy) to the target
+	 * location (tx,ty), writing the result into a path supplied by the caller.
+	 * Reusing the same path object for repeated searches avoids creating
+	 * garbage on every call.
+	 * 
+	 * @param mover The entity that will be moving along the path
+	 * @param maxDistance The max distance the mover will move before running out of stamina
+	 * @param sx The x coordinate of the start location
+	 * @param sy The y coordinate of the start location
+	 * @param tx The x coordinate of the target location
+	 * @param ty The y coordinate of the target location
+	 * @param path The path to overwrite with the steps found
+	 * @return True if a path was found, false if not, in which case the
+	 * content of the given path is undefined
+	 */
+	public boolean findPath(Mover mover, int maxDistance, int sx, int sy, int tx, int ty, Path path);
 }
@@ -0,0 +1,29 @@
+package com.qylla.util.pathfinding.interfaces;
+
+import com.qylla.util.pathfinding.SearchContext;
+
+/**
+ * A listener told about every search a path finder runs, used to measure
+ * how much work the queries of a game cost. A finder without a listener
+ * doesn't read the clock or make any call, so leaving it unset costs
+ * nothing beyond the counters every search keeps in its context anyway.
+ *
+ * Listeners are called on the thread that ran the search, right after it
+ * finished and before its context is reused, so they must be thread safe
+ * if the finder is shared and must not keep the context.
+ *
+ * @author Cesar Ramirez
+ */
+public interface SearchListener {
+	/**
+	 * Notification that a search finished
+	 *
+	 * @param mover The entity the search was run for, may be null
+	 * @param context The context of the search, holding the expanded,
+	 * reopened and neighbour counts and the peak size of the open list
+	 * @param elapsedNanos The time the search took in nanoseconds
+	 * @param found True if a path was found. For multiple target searches,
+	 * true if any target was reached. Range searches always succeed.
+	 */
+	public void searchFinished(Mover mover, SearchContext context, long elapsedNanos, boolean found);
+}
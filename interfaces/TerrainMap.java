@@ -0,0 +1,18 @@
+package com.qylla.util.pathfinding.interfaces;
+
+/**
+ * A tile based map that can hand its terrain costs over as a primitive
+ * array. Path finders read the array directly instead of asking for the
+ * cost of every tile through {@link TileBasedMap#getCost(Mover, int, int)}.
+ * 
+ * @author Cesar Ramirez
+ */
+public interface TerrainMap extends TileBasedMap {
+	/**
+	 * Get the cost of moving into each tile of the map, for any mover.
+	 * The array is only read, never modified.
+	 * 
+	 * @return The cost of each tile, indexed by x then y
+	 */
+	public int[][] getTerrain();
+}
@@ -0,0 +1,19 @@
+package com.qylla.util.pathfinding.interfaces;
+
+/**
+ * A tile based map that counts its changes. Path finders that work out
+ * costs and blocking ahead of time compare the version they worked from
+ * with the current one, and work them out again when it changed.
+ * 
+ * @author Cesar Ramirez
+ */
+public interface VersionedMap extends TileBasedMap {
+	/**
+	 * Get the version of the map. It must change every time the cost or
+	 * the blocking of a tile changes for any mover, including when units
+	 * move onto or off tiles.
+	 * 
+	 * @return The version of the map
+	 */
+	public int getMapVersion();
+}